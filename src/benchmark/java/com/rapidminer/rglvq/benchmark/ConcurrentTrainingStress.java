@@ -0,0 +1,179 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.concurrency.ThreadPoolTaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.operator.AbstractModel;
+import com.rapidminer.rglvq.operator.BatchRGLVQModel;
+import com.rapidminer.rglvq.operator.RGLVQModel;
+import com.rapidminer.tools.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+
+/**
+ * Trains many models in parallel on shared, read-only matrices of all bundled datasets (online,
+ * mini-batch and batch mode) and checks that every result equals the one of the same training run
+ * alone. Models that share state would see each other's matrices or random numbers and diverge.
+ * <p>
+ * Arguments: data directory, optionally the number of threads (default 8) and of rounds (default 3).
+ * Exits with status 1 if a result differs.
+ */
+public class ConcurrentTrainingStress {
+
+    private static final int SEEDS = 4;
+    private static final int ITERATIONS = 5;
+    private static final int PROTOTYPES_PER_CLASS = 2;
+    private static final double LEARNING_RATE = 0.1;
+    private static final int MINI_BATCH_SIZE = 16;
+
+    public static void main(String[] args) throws IOException, ExecutionException, OperatorException {
+        List<ExperimentData> datasets = ExperimentData.loadAll(new File(args[0]));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        //the online update logs every example
+        LogService.getRoot().setLevel(Level.WARNING);
+
+        List<Job> jobs = new ArrayList<>();
+        for (ExperimentData data : datasets) {
+            SquaredDissimilarityMatrix matrix = TrainingFixtures.squaredMatrix(data);
+            for (String mode : new String[]{"online", "mini-batch", "batch"}) {
+                for (int seed = 0; seed < SEEDS; seed++) {
+                    jobs.add(new Job(data.getName(), mode, seed, matrix, data.getLabels()));
+                }
+            }
+        }
+
+        //the models split their own work as well, with one executor shared by all of them
+        try (ThreadPoolTaskExecutor modelExecutor = new ThreadPoolTaskExecutor(2);
+             ThreadPoolTaskExecutor jobExecutor = new ThreadPoolTaskExecutor(threads)) {
+            List<double[][]> expected = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                expected.add(job.train(modelExecutor));
+            }
+            int failures = 0;
+            Random shuffle = new Random(rounds);
+            for (int round = 0; round < rounds; round++) {
+                List<Integer> order = new ArrayList<>();
+                for (int j = 0; j < jobs.size(); j++) {
+                    order.add(j);
+                }
+                Collections.shuffle(order, shuffle);
+                List<Callable<double[][]>> tasks = new ArrayList<>(jobs.size());
+                for (int j : order) {
+                    Job job = jobs.get(j);
+                    tasks.add(() -> job.train(modelExecutor));
+                }
+                List<double[][]> results = jobExecutor.call(tasks);
+                for (int t = 0; t < order.size(); t++) {
+                    int j = order.get(t);
+                    if (!Arrays.deepEquals(results.get(t), expected.get(j))) {
+                        failures++;
+                        System.out.println("round " + round + ": " + jobs.get(j) + " differs from its sequential run");
+                    }
+                }
+            }
+            System.out.println(jobs.size() + " trainings x " + rounds + " rounds on " + threads + " threads, " + failures + " differing results");
+            if (failures > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * One training run, fully determined by its inputs and seed.
+     */
+    private static class Job {
+
+        private final String dataset;
+        private final String mode;
+        private final long seed;
+        private final SquaredDissimilarityMatrix matrix;
+        private final double[] labels;
+
+        Job(String dataset, String mode, long seed, SquaredDissimilarityMatrix matrix, double[] labels) {
+            this.dataset = dataset;
+            this.mode = mode;
+            this.seed = seed;
+            this.matrix = matrix;
+            this.labels = labels;
+        }
+
+        double[][] train(ThreadPoolTaskExecutor executor) throws OperatorException {
+            Random random = new Random(seed);
+            int[] rows = TrainingFixtures.prototypeRows(labels, PROTOTYPES_PER_CLASS, random);
+            ExampleSet prototypes = TrainingFixtures.prototypes(matrix, labels, rows);
+            int[] columnIndices = TrainingFixtures.identity(matrix.size());
+            AbstractModel model;
+            if ("batch".equals(mode)) {
+                model = new BatchRGLVQModel(prototypes, ITERATIONS, matrix, columnIndices);
+            } else {
+                RGLVQModel onlineModel = new RGLVQModel(prototypes, ITERATIONS, LEARNING_RATE, matrix, columnIndices);
+                onlineModel.setBatchSize("mini-batch".equals(mode) ? MINI_BATCH_SIZE : 1);
+                model = onlineModel;
+            }
+            model.setExecutor(executor);
+            model.setRandom(random);
+            ExampleSet result = model.run(trainingSet(prototypes), labels);
+            double[][] values = new double[result.size()][];
+            int p = 0;
+            for (Example example : result) {
+                List<Double> exampleValues = new ArrayList<>();
+                for (Attribute attribute : result.getAttributes()) {
+                    exampleValues.add(example.getValue(attribute));
+                }
+                values[p++] = exampleValues.stream().mapToDouble(Double::doubleValue).toArray();
+            }
+            return values;
+        }
+
+        /**
+         * The online mode iterates the training set, the other modes only read its attributes.
+         */
+        private ExampleSet trainingSet(ExampleSet prototypes) {
+            if ("online".equals(mode)) {
+                int[] allRows = TrainingFixtures.identity(matrix.size());
+                return TrainingFixtures.prototypes(matrix, labels, allRows);
+            }
+            return prototypes;
+        }
+
+        @Override
+        public String toString() {
+            return dataset + " " + mode + " seed " + seed;
+        }
+    }
+}
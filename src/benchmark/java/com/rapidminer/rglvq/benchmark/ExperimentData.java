@@ -0,0 +1,125 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dissimilarity matrix of the bundled experiments. The files are semicolon separated, every line
+ * holds the dissimilarities of one item to all items followed by its class label.
+ */
+public class ExperimentData {
+
+    private final String name;
+    private final double[][] dissimilarities;
+    private final double[] labels;
+
+    public ExperimentData(String name, double[][] dissimilarities, double[] labels) {
+        this.name = name;
+        this.dissimilarities = dissimilarities;
+        this.labels = labels;
+    }
+
+    /**
+     * Reads a matrix file.
+     *
+     * @param file - semicolon separated matrix with the label in the last column
+     * @return - the dataset
+     * @throws IOException - if the file cannot be read or is not a square matrix with labels
+     */
+    public static ExperimentData load(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        List<double[]> rows = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                String[] fields = line.split(";");
+                double[] row = new double[fields.length];
+                try {
+                    for (int k = 0; k < fields.length; k++) {
+                        row[k] = Double.parseDouble(fields[k].trim());
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + " is not a numeric matrix", e);
+                }
+                rows.add(row);
+            }
+        }
+        int size = rows.size();
+        double[][] dissimilarities = new double[size][];
+        double[] labels = new double[size];
+        for (int i = 0; i < size; i++) {
+            double[] row = rows.get(i);
+            if (row.length != size + 1) {
+                throw new IOException(file + ": line " + (i + 1) + " has " + row.length + " fields, expected " + (size + 1));
+            }
+            dissimilarities[i] = Arrays.copyOf(row, size);
+            labels[i] = row[size];
+        }
+        return new ExperimentData(file.getName().replaceFirst("\\.csv$", ""), dissimilarities, labels);
+    }
+
+    /**
+     * Loads all matrix files below a directory, files of another layout are skipped.
+     *
+     * @param directory - root directory of the experiment data
+     * @return - the datasets sorted by name
+     * @throws IOException - if the directory cannot be listed
+     */
+    public static List<ExperimentData> loadAll(File directory) throws IOException {
+        List<ExperimentData> datasets = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        Files.walk(directory.toPath()).filter(p -> p.toString().endsWith(".csv")).forEach(p -> files.add(p.toFile()));
+        for (File file : files) {
+            try {
+                datasets.add(load(file));
+            } catch (IOException e) {
+                System.out.println("Skipping " + file + ": " + e.getMessage());
+            }
+        }
+        datasets.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return datasets;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public double[][] getDissimilarities() {
+        return dissimilarities;
+    }
+
+    public double[] getLabels() {
+        return labels;
+    }
+
+}
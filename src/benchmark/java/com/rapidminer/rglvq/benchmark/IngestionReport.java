@@ -0,0 +1,187 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.table.AttributeFactory;
+import com.rapidminer.example.utils.ExampleSetBuilder;
+import com.rapidminer.example.utils.ExampleSets;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.concurrency.ThreadPoolTaskExecutor;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.WritableSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.operator.ExampleSetMatrixReader;
+import com.rapidminer.tools.Ontology;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how long copying a full matrix ExampleSet into the packed storage takes and how much heap
+ * it needs on top of the ExampleSet. The sequential method is the former loop of the operator over
+ * all examples and attributes, the parallel method the {@link ExampleSetMatrixReader} with all
+ * available threads. Every method keeps the fastest of several runs and its peak heap.
+ * <p>
+ * Arguments: output CSV file, optionally the matrix sizes (default 2000,10000). A 10000 x 10000
+ * matrix takes 800 MB as ExampleSet and 400 MB packed, so the JVM needs a heap of 3 GB to hold both results next to it.
+ */
+public class IngestionReport {
+
+    private static final int RUNS = 3;
+    private static final long SEED = 2024;
+
+    public static void main(String[] args) throws IOException, OperatorException {
+        File output = new File(args[0]);
+        String[] sizes = (args.length > 1 ? args[1] : "2000,10000").split(",");
+        int threads = Runtime.getRuntime().availableProcessors();
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name());
+             ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor(threads)) {
+            String header = "size;method;threads;ingestion_ms;peak_heap_bytes";
+            writer.println(header);
+            System.out.println(header);
+            for (String size : sizes) {
+                int n = Integer.parseInt(size.trim());
+                ExampleSet matrixSet = matrixExampleSet(n);
+                Attribute[] matrixAttributes = matrixSet.getAttributes().createRegularAttributeArray();
+                int[] columnIndices = TrainingFixtures.identity(n);
+
+                List<String> lines = new ArrayList<>();
+                PackedSquaredDissimilarityMatrix before = null;
+                PackedSquaredDissimilarityMatrix after = null;
+                double bestMillis = Double.MAX_VALUE;
+                long peakHeap = 0;
+                for (int r = 0; r < RUNS; r++) {
+                    before = null;
+                    long baseline = settleHeap();
+                    long start = System.nanoTime();
+                    before = new PackedSquaredDissimilarityMatrix(n);
+                    readSequential(matrixSet, matrixAttributes, columnIndices, before);
+                    bestMillis = Math.min(bestMillis, (System.nanoTime() - start) / 1E6);
+                    peakHeap = Math.max(peakHeap, peakHeap() - baseline);
+                }
+                lines.add(String.format(Locale.ROOT, "%d;sequential;1;%.1f;%d", n, bestMillis, peakHeap));
+
+                bestMillis = Double.MAX_VALUE;
+                peakHeap = 0;
+                for (int r = 0; r < RUNS; r++) {
+                    after = null;
+                    long baseline = settleHeap();
+                    long start = System.nanoTime();
+                    after = new PackedSquaredDissimilarityMatrix(n);
+                    ExampleSetMatrixReader.read(matrixSet, matrixAttributes, columnIndices, after, executor);
+                    bestMillis = Math.min(bestMillis, (System.nanoTime() - start) / 1E6);
+                    peakHeap = Math.max(peakHeap, peakHeap() - baseline);
+                }
+                lines.add(String.format(Locale.ROOT, "%d;parallel;%d;%.1f;%d", n, threads, bestMillis, peakHeap));
+
+                for (int i = 0; i < n; i++) {
+                    for (int k = i; k < n; k++) {
+                        if (before.get(i, k) != after.get(i, k)) {
+                            throw new IllegalStateException("The methods differ at row " + i + ", column " + k);
+                        }
+                    }
+                }
+                for (String line : lines) {
+                    writer.println(line);
+                    System.out.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * The former extraction of the operator: one pass over all examples reading every attribute.
+     */
+    static void readSequential(ExampleSet trainingSet, Attribute[] matrixAttributes, int[] columnIndices, WritableSquaredDissimilarityMatrix matrix) {
+        double[] row = new double[columnIndices.length];
+        int i = 0;
+        for (Example example : trainingSet) {
+            for (int j = 0; j < columnIndices.length; j++) {
+                double value = example.getValue(matrixAttributes[columnIndices[j]]);
+                row[j] = value * value;
+            }
+            matrix.setRow(i, row);
+            i++;
+        }
+    }
+
+    /**
+     * Builds the dissimilarities of Gaussian clusters as an ExampleSet with one attribute per point.
+     */
+    private static ExampleSet matrixExampleSet(int size) {
+        PackedSquaredDissimilarityMatrix squared = TrainingFixtures.clusters(size, 4, 10, new double[size], new Random(SEED));
+        List<Attribute> attributes = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            attributes.add(AttributeFactory.createAttribute("att" + (k + 1), Ontology.REAL));
+        }
+        ExampleSetBuilder builder = ExampleSets.from(attributes).withExpectedSize(size);
+        double[] row = new double[size];
+        for (int i = 0; i < size; i++) {
+            squared.getRow(i, row);
+            for (int k = 0; k < size; k++) {
+                row[k] = Math.sqrt(row[k]);
+            }
+            builder.addRow(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap pools.
+     *
+     * @return - heap in use before the measurement
+     */
+    private static long settleHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
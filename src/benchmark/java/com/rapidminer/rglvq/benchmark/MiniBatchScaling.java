@@ -0,0 +1,97 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.concurrency.ThreadPoolTaskExecutor;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.operator.RGLVQModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how mini-batch training scales with the number of threads. A synthetic dataset of
+ * Gaussian clusters is trained with the same prototypes, batch size and epochs for every thread
+ * count; the report holds the time per epoch and the speedup over one thread.
+ * <p>
+ * Arguments: output CSV file, optionally the number of points (default 4000), the batch size
+ * (default 256), the number of epochs (default 3) and a comma separated list of thread counts
+ * (default 1,2,4,8,16,32). Thread counts above the number of available processors are measured
+ * as well, they show the overhead of oversubscription.
+ */
+public class MiniBatchScaling {
+
+    private static final int CLASSES = 4;
+    private static final int DIMENSIONS = 10;
+    private static final int PROTOTYPES_PER_CLASS = 2;
+    private static final double LEARNING_RATE = 0.3;
+    private static final long SEED = 2001;
+
+    public static void main(String[] args) throws IOException, OperatorException {
+        File output = new File(args[0]);
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        String[] threadCounts = (args.length > 4 ? args[4] : "1,2,4,8,16,32").split(",");
+
+        Random random = new Random(SEED);
+        double[] labels = new double[size];
+        PackedSquaredDissimilarityMatrix matrix = TrainingFixtures.clusters(size, CLASSES, DIMENSIONS, labels, random);
+        int[] prototypeRows = TrainingFixtures.prototypeRows(labels, PROTOTYPES_PER_CLASS, random);
+
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+            String header = "size;batch_size;threads;available_processors;ms_per_epoch;speedup";
+            writer.println(header);
+            System.out.println(header);
+            double baseline = Double.NaN;
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                double millis;
+                try (ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor(threads)) {
+                    ExampleSet prototypes = TrainingFixtures.prototypes(matrix, labels, prototypeRows);
+                    RGLVQModel model = new RGLVQModel(prototypes, epochs, LEARNING_RATE, matrix, TrainingFixtures.identity(size));
+                    model.setBatchSize(batchSize);
+                    model.setExecutor(executor);
+                    long start = System.nanoTime();
+                    //mini-batch epochs only read the attribute names of the training set
+                    model.run(prototypes, labels);
+                    millis = (System.nanoTime() - start) / 1E6 / epochs;
+                }
+                if (Double.isNaN(baseline)) {
+                    baseline = millis;
+                }
+                String line = String.format(Locale.ROOT, "%d;%d;%d;%d;%.1f;%.2f", size, batchSize, threads,
+                        Runtime.getRuntime().availableProcessors(), millis, baseline / millis);
+                writer.println(line);
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.operator.AbstractModel;
+import com.rapidminer.rglvq.operator.BatchRGLVQModel;
+import com.rapidminer.rglvq.operator.RGLVQClassificationModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the serialized classification model with the form that embedded the training matrix.
+ * The legacy size is measured from the fields the model used to serialize on top of the compact
+ * form: the packed squared matrix and the dense prototypes. Load time is the fastest of several
+ * deserializations.
+ * <p>
+ * Arguments: data directory, output CSV file, optionally the sizes of synthetic datasets
+ * (default 1000,2000,4000).
+ */
+public class ModelSizeReport {
+
+    private static final int PROTOTYPES_PER_CLASS = 2;
+    private static final int ITERATIONS = 30;
+    private static final int LOADS = 5;
+    private static final long SEED = 2001;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException, OperatorException {
+        File output = new File(args[1]);
+        String[] syntheticSizes = (args.length > 2 ? args[2] : "1000,2000,4000").split(",");
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+            String header = "dataset;size;coefficients;legacy_bytes;compact_bytes;legacy_load_ms;compact_load_ms";
+            writer.println(header);
+            System.out.println(header);
+            List<String> lines = new ArrayList<>();
+            for (ExperimentData data : ExperimentData.loadAll(new File(args[0]))) {
+                lines.add(compare(data.getName(), TrainingFixtures.squaredMatrix(data), data.getLabels()));
+            }
+            for (String size : syntheticSizes) {
+                int n = Integer.parseInt(size.trim());
+                double[] labels = new double[n];
+                PackedSquaredDissimilarityMatrix matrix = TrainingFixtures.clusters(n, 4, 10, labels, new Random(SEED));
+                lines.add(compare("clusters", matrix, labels));
+            }
+            for (String line : lines) {
+                writer.println(line);
+                System.out.println(line);
+            }
+        }
+    }
+
+    private static String compare(String name, PackedSquaredDissimilarityMatrix matrix, double[] labels) throws IOException, ClassNotFoundException, OperatorException {
+        Random random = new Random(SEED);
+        int[] rows = TrainingFixtures.prototypeRows(labels, PROTOTYPES_PER_CLASS, random);
+        ExampleSet prototypes = TrainingFixtures.prototypes(matrix, labels, rows);
+        int[] columnIndices = TrainingFixtures.identity(matrix.size());
+        AbstractModel trainer = new BatchRGLVQModel(prototypes, ITERATIONS, matrix, columnIndices);
+        trainer.setRandom(random);
+        ExampleSet optimized = trainer.run(prototypes, labels);
+        RGLVQClassificationModel<Double> model = new RGLVQClassificationModel<>(optimized, optimized, matrix, columnIndices, trainer.COEFF_CUTOFF);
+
+        double[][] densePrototypes = new double[optimized.size()][matrix.size()];
+        for (int p = 0; p < densePrototypes.length; p++) {
+            int k = 0;
+            for (Attribute attribute : optimized.getAttributes()) {
+                densePrototypes[p][k++] = optimized.getExample(p).getValue(attribute);
+            }
+        }
+        byte[] compact = serialize(model);
+        byte[] embedded = serialize(new Object[]{matrix, densePrototypes});
+        return String.format(Locale.ROOT, "%s;%d;%d;%d;%d;%.2f;%.2f", name, matrix.size(), model.getNumberOfCoefficients(),
+                compact.length + embedded.length, compact.length, loadMillis(compact) + loadMillis(embedded), loadMillis(compact));
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static double loadMillis(byte[] serialized) throws IOException, ClassNotFoundException {
+        double best = Double.MAX_VALUE;
+        for (int l = 0; l < LOADS; l++) {
+            long start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                in.readObject();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1E6);
+        }
+        return best;
+    }
+}
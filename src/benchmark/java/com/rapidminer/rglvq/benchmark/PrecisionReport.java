@@ -0,0 +1,204 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.rglvq.matrix.PackedFloatSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedQuantizedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.WritableSquaredDissimilarityMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the reduced precision matrix storages with the double storage on the bundled datasets.
+ * For random class-sparse prototypes (the representation used during training) it reports the
+ * largest entry error, the largest error of the projections D·α and of the distances, and how many
+ * examples keep their nearest prototype.
+ * <p>
+ * Arguments: data directory, output CSV file.
+ */
+public class PrecisionReport {
+
+    private static final int PROTOTYPES_PER_CLASS = 3;
+    private static final long SEED = 2001;
+
+    public static void main(String[] args) throws IOException {
+        List<ExperimentData> datasets = ExperimentData.loadAll(new File(args[0]));
+        File output = new File(args[1]);
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+            String header = "dataset;size;precision;bytes;max_entry_error;max_projection_error;max_distance_error;nearest_prototype_agreement";
+            writer.println(header);
+            System.out.println(header);
+            for (ExperimentData data : datasets) {
+                for (String line : compare(data)) {
+                    writer.println(line);
+                    System.out.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the comparison for one dataset.
+     *
+     * @param data - the dataset
+     * @return - one report line per precision
+     */
+    static List<String> compare(ExperimentData data) {
+        int n = data.size();
+        double[][] squared = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < n; k++) {
+                double value = data.getDissimilarities()[i][k];
+                squared[i][k] = value * value;
+            }
+        }
+        WritableSquaredDissimilarityMatrix reference = fill(new PackedSquaredDissimilarityMatrix(n), squared);
+
+        //random class-sparse prototypes on the simplex
+        Random random = new Random(SEED);
+        double[] classes = Arrays.stream(data.getLabels()).distinct().toArray();
+        List<int[]> supports = new ArrayList<>();
+        List<double[]> coefficients = new ArrayList<>();
+        for (double label : classes) {
+            int[] support = IntStream.range(0, n).filter(i -> data.getLabels()[i] == label).toArray();
+            for (int p = 0; p < PROTOTYPES_PER_CLASS; p++) {
+                double[] coefficient = new double[support.length];
+                double sum = 0;
+                for (int k = 0; k < coefficient.length; k++) {
+                    coefficient[k] = random.nextDouble();
+                    sum += coefficient[k];
+                }
+                for (int k = 0; k < coefficient.length; k++) {
+                    coefficient[k] /= sum;
+                }
+                supports.add(support);
+                coefficients.add(coefficient);
+            }
+        }
+        int[][] supportArray = supports.toArray(new int[0][]);
+        double[][] coefficientArray = coefficients.toArray(new double[0][]);
+        double[][] referenceDistances = distances(reference, supportArray, coefficientArray);
+        double[][] referenceProjections = project(reference, supportArray, coefficientArray);
+        double projectionScale = maxAbs(referenceProjections);
+        double distanceScale = maxAbs(referenceDistances);
+
+        List<String> lines = new ArrayList<>();
+        WritableSquaredDissimilarityMatrix[] candidates = {reference, fill(new PackedFloatSquaredDissimilarityMatrix(n), squared),
+                fill(new PackedQuantizedSquaredDissimilarityMatrix(n), squared)};
+        String[] names = {"double", "float", "16 bit"};
+        for (int c = 0; c < candidates.length; c++) {
+            WritableSquaredDissimilarityMatrix candidate = candidates[c];
+            double entryError = 0;
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < n; k++) {
+                    entryError = Math.max(entryError, Math.abs(candidate.get(i, k) - reference.get(i, k)));
+                }
+            }
+            double[][] projections = project(candidate, supportArray, coefficientArray);
+            double[][] distances = distances(candidate, supportArray, coefficientArray);
+            int agreement = 0;
+            for (int i = 0; i < n; i++) {
+                if (nearest(distances, i) == nearest(referenceDistances, i)) {
+                    agreement++;
+                }
+            }
+            lines.add(String.format(Locale.ROOT, "%s;%d;%s;%d;%.3e;%.3e;%.3e;%.4f", data.getName(), n, names[c],
+                    candidate.getMemoryUsage(), entryError / maxAbs(squared), maxDifference(projections, referenceProjections) / projectionScale,
+                    maxDifference(distances, referenceDistances) / distanceScale, (double) agreement / n));
+        }
+        return lines;
+    }
+
+    private static WritableSquaredDissimilarityMatrix fill(WritableSquaredDissimilarityMatrix matrix, double[][] squared) {
+        for (int i = 0; i < squared.length; i++) {
+            matrix.setRow(i, squared[i]);
+        }
+        return matrix;
+    }
+
+    private static double[][] project(WritableSquaredDissimilarityMatrix matrix, int[][] supports, double[][] coefficients) {
+        int[] selection = IntStream.range(0, supports.length).toArray();
+        double[][] projections = new double[supports.length][matrix.size()];
+        matrix.multiply(supports, coefficients, selection, projections);
+        return projections;
+    }
+
+    /**
+     * Distances of every row to every prototype, (Dα_j)_i + z_j, indexed [prototype][row].
+     */
+    private static double[][] distances(WritableSquaredDissimilarityMatrix matrix, int[][] supports, double[][] coefficients) {
+        double[][] projections = project(matrix, supports, coefficients);
+        for (int p = 0; p < supports.length; p++) {
+            double product = 0;
+            for (int k = 0; k < supports[p].length; k++) {
+                product += projections[p][supports[p][k]] * coefficients[p][k];
+            }
+            for (int i = 0; i < projections[p].length; i++) {
+                projections[p][i] -= 0.5 * product;
+            }
+        }
+        return projections;
+    }
+
+    private static int nearest(double[][] distances, int row) {
+        int best = 0;
+        for (int p = 1; p < distances.length; p++) {
+            if (distances[p][row] < distances[best][row]) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    private static double maxAbs(double[][] values) {
+        double max = 0;
+        for (double[] row : values) {
+            for (double value : row) {
+                max = Math.max(max, Math.abs(value));
+            }
+        }
+        return max;
+    }
+
+    private static double maxDifference(double[][] a, double[][] b) {
+        double max = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < a[i].length; k++) {
+                max = Math.max(max, Math.abs(a[i][k] - b[i][k]));
+            }
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,379 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.operator.ProcessStoppedException;
+import com.rapidminer.rglvq.engine.RGLVQEngine;
+import com.rapidminer.rglvq.engine.TrainedPrototypes;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.tools.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+
+/**
+ * Cross-validates every training mode on the bundled datasets and on larger synthetic ones and
+ * reports accuracy, epochs until convergence, training time and peak heap. With a baseline report
+ * the accuracy and the speed of every dataset and mode are compared with it.
+ * <p>
+ * Training times depend on the machine, so they are also reported relative to a fixed calibration
+ * workload measured in the same run, and only the relative times are compared. A mode is reported as
+ * regression if its accuracy drops by more than {@value #ACCURACY_TOLERANCE}. A relative time growing
+ * by more than the factor {@value #TIME_TOLERANCE} is only reported as slowdown, as it still depends
+ * on the machine and its load; trainings below {@value #MIN_COMPARED_MILLIS} ms are too short to
+ * compare their times.
+ * <p>
+ * Arguments: data directory, output CSV file, optionally the baseline CSV file. Exits with status 1
+ * if an accuracy regression is found.
+ */
+public class RegressionSuite {
+
+    private static final int FOLDS = 5;
+    private static final int ITERATIONS = 50;
+    private static final int PROTOTYPES_PER_CLASS = 2;
+    private static final double LEARNING_RATE = 0.1;
+    private static final int MINI_BATCH_SIZE = 32;
+    private static final double COST_TOLERANCE = 1E-4;
+    private static final int[] SYNTHETIC_SIZES = {300, 1000};
+    private static final int SYNTHETIC_CLASSES = 3;
+    private static final int SYNTHETIC_DIMENSIONS = 10;
+    private static final long SEED = 2001;
+
+    private static final double ACCURACY_TOLERANCE = 0.02;
+    private static final double TIME_TOLERANCE = 1.5;
+    private static final double MIN_COMPARED_MILLIS = 20;
+    private static final int CALIBRATION_SIZE = 1000;
+    private static final int CALIBRATION_RUNS = 5;
+
+    private static final String HEADER = "dataset;size;mode;accuracy;epochs;wall_ms;relative_time;peak_heap_bytes";
+    private static final String[] MODES = {"online", "mini-batch", "batch", "median"};
+
+    public static void main(String[] args) throws IOException, ProcessStoppedException {
+        List<ExperimentData> datasets = ExperimentData.loadAll(new File(args[0]));
+        File output = new File(args[1]);
+        File baseline = args.length > 2 ? new File(args[2]) : null;
+        LogService.getRoot().setLevel(Level.WARNING);
+
+        Random random = new Random(SEED);
+        for (int size : SYNTHETIC_SIZES) {
+            double[] labels = new double[size];
+            PackedSquaredDissimilarityMatrix matrix = TrainingFixtures.clusters(size, SYNTHETIC_CLASSES, SYNTHETIC_DIMENSIONS, labels, random);
+            double[][] dissimilarities = new double[size][size];
+            for (int i = 0; i < size; i++) {
+                for (int k = 0; k < size; k++) {
+                    dissimilarities[i][k] = Math.sqrt(matrix.get(i, k));
+                }
+            }
+            datasets.add(new ExperimentData("synthetic-" + size, dissimilarities, labels));
+        }
+
+        double calibrationMillis = calibrate();
+        System.out.println(String.format(Locale.ROOT, "calibration: %.2f ms", calibrationMillis));
+        List<String> lines = new ArrayList<>();
+        output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+            writer.println(HEADER);
+            System.out.println(HEADER);
+            for (ExperimentData data : datasets) {
+                for (int mode = 0; mode < MODES.length; mode++) {
+                    String line = crossValidate(data, mode, calibrationMillis);
+                    lines.add(line);
+                    writer.println(line);
+                    writer.flush();
+                    System.out.println(line);
+                }
+            }
+        }
+
+        if (baseline != null && baseline.isFile()) {
+            List<String> baselineLines = Files.readAllLines(baseline.toPath(), StandardCharsets.UTF_8);
+            for (String slowdown : compareTimes(lines, baselineLines)) {
+                System.out.println("SLOWER " + slowdown);
+            }
+            List<String> regressions = compare(lines, baselineLines);
+            for (String regression : regressions) {
+                System.out.println("REGRESSION " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+            System.out.println("No regressions against " + baseline);
+        } else if (baseline != null) {
+            System.out.println("No baseline at " + baseline + ", nothing compared");
+        }
+    }
+
+    /**
+     * Trains on all folds but one and scores the left out fold, for every fold.
+     *
+     * @return - report line of the dataset and mode
+     */
+    static String crossValidate(ExperimentData data, int mode, double calibrationMillis) throws ProcessStoppedException {
+        int n = data.size();
+        double[][] dissimilarities = data.getDissimilarities();
+        int[] classes = classIndices(data.getLabels());
+        int[] fold = folds(n);
+        int correct = 0;
+        long epochs = 0;
+        long nanos = 0;
+        long peakHeap = 0;
+        for (int f = 0; f < FOLDS; f++) {
+            int[] trainingRows = rows(fold, f, false);
+            int[] testRows = rows(fold, f, true);
+            PackedSquaredDissimilarityMatrix matrix = new PackedSquaredDissimilarityMatrix(trainingRows.length);
+            double[] row = new double[trainingRows.length];
+            int[] labels = new int[trainingRows.length];
+            for (int i = 0; i < trainingRows.length; i++) {
+                for (int k = 0; k < trainingRows.length; k++) {
+                    double value = dissimilarities[trainingRows[i]][trainingRows[k]];
+                    row[k] = value * value;
+                }
+                matrix.setRow(i, row);
+                labels[i] = classes[trainingRows[i]];
+            }
+
+            RGLVQEngine engine = createEngine(mode, f);
+            resetPeakHeap();
+            long start = System.nanoTime();
+            TrainedPrototypes prototypes = engine.train(matrix, labels);
+            nanos += System.nanoTime() - start;
+            peakHeap = Math.max(peakHeap, peakHeap());
+            epochs += prototypes.getCostFunctionValues().size();
+
+            double[] selfTerms = selfTerms(matrix, prototypes);
+            for (int t : testRows) {
+                int best = -1;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < prototypes.getNumberOfPrototypes(); j++) {
+                    int[] support = prototypes.getSupport(j);
+                    double[] coefficients = prototypes.getCoefficients(j);
+                    double distance = selfTerms[j];
+                    for (int k = 0; k < support.length; k++) {
+                        double value = dissimilarities[t][trainingRows[support[k]]];
+                        distance += value * value * coefficients[k];
+                    }
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = j;
+                    }
+                }
+                if (best >= 0 && prototypes.getLabel(best) == classes[t]) {
+                    correct++;
+                }
+            }
+        }
+        double millis = nanos / 1E6;
+        return String.format(Locale.ROOT, "%s;%d;%s;%.4f;%.1f;%.1f;%.3f;%d", data.getName(), n, MODES[mode], (double) correct / n,
+                (double) epochs / FOLDS, millis, millis / calibrationMillis, peakHeap);
+    }
+
+    private static RGLVQEngine createEngine(int mode, int fold) {
+        RGLVQEngine engine = new RGLVQEngine();
+        engine.setTrainingMode(mode == 3 ? RGLVQEngine.TRAINING_MODE_MEDIAN
+                : mode == 2 ? RGLVQEngine.TRAINING_MODE_BATCH : RGLVQEngine.TRAINING_MODE_ONLINE);
+        engine.setBatchSize(mode == 1 ? MINI_BATCH_SIZE : 1);
+        engine.setPrototypesPerClass(PROTOTYPES_PER_CLASS);
+        engine.setIterations(ITERATIONS);
+        engine.setLearningRate(LEARNING_RATE);
+        engine.setStoppingCriteria(COST_TOLERANCE, 0);
+        engine.setRandom(new Random(SEED + fold));
+        return engine;
+    }
+
+    /**
+     * Self-terms z_j = -1/2 * α_j * Dα_j of the trained prototypes.
+     */
+    private static double[] selfTerms(SquaredDissimilarityMatrix matrix, TrainedPrototypes prototypes) {
+        double[] selfTerms = new double[prototypes.getNumberOfPrototypes()];
+        for (int j = 0; j < selfTerms.length; j++) {
+            int[] support = prototypes.getSupport(j);
+            double[] coefficients = prototypes.getCoefficients(j);
+            double product = 0;
+            for (int a = 0; a < support.length; a++) {
+                for (int b = 0; b < support.length; b++) {
+                    product += coefficients[a] * matrix.get(support[a], support[b]) * coefficients[b];
+                }
+            }
+            selfTerms[j] = -0.5 * product;
+        }
+        return selfTerms;
+    }
+
+    /**
+     * Assigns every row to a fold, in a random order that is the same in every run.
+     */
+    private static int[] folds(int size) {
+        List<Integer> order = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(SEED));
+        int[] fold = new int[size];
+        for (int i = 0; i < size; i++) {
+            fold[order.get(i)] = i % FOLDS;
+        }
+        return fold;
+    }
+
+    private static int[] rows(int[] fold, int f, boolean inFold) {
+        int[] rows = new int[fold.length];
+        int count = 0;
+        for (int i = 0; i < fold.length; i++) {
+            if ((fold[i] == f) == inFold) {
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static int[] classIndices(double[] labels) {
+        double[] classes = Arrays.stream(labels).distinct().sorted().toArray();
+        int[] indices = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            indices[i] = Arrays.binarySearch(classes, labels[i]);
+        }
+        return indices;
+    }
+
+    /**
+     * Median time of a fixed matrix-vector product workload, the unit of the relative times.
+     */
+    static double calibrate() {
+        Random random = new Random(SEED);
+        PackedSquaredDissimilarityMatrix matrix = new PackedSquaredDissimilarityMatrix(CALIBRATION_SIZE);
+        double[] row = new double[CALIBRATION_SIZE];
+        for (int i = 0; i < CALIBRATION_SIZE; i++) {
+            for (int k = 0; k < CALIBRATION_SIZE; k++) {
+                row[k] = random.nextDouble();
+            }
+            matrix.setRow(i, row);
+        }
+        int[][] supports = {TrainingFixtures.identity(CALIBRATION_SIZE)};
+        double[][] coefficients = {row};
+        double[][] target = new double[1][CALIBRATION_SIZE];
+        double[] millis = new double[CALIBRATION_RUNS];
+        for (int r = 0; r < CALIBRATION_RUNS; r++) {
+            long start = System.nanoTime();
+            for (int repeat = 0; repeat < 20; repeat++) {
+                matrix.multiply(supports, coefficients, new int[]{0}, target);
+            }
+            millis[r] = (System.nanoTime() - start) / 1E6;
+        }
+        Arrays.sort(millis);
+        return millis[CALIBRATION_RUNS / 2];
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Compares the accuracies of the report lines with the lines of the baseline report.
+     *
+     * @return - description of every accuracy regression
+     */
+    static List<String> compare(List<String> lines, List<String> baselineLines) {
+        Map<String, String[]> baseline = byDatasetAndMode(baselineLines);
+        List<String> regressions = new ArrayList<>();
+        for (String line : lines) {
+            String[] fields = line.split(";");
+            String[] reference = baseline.get(fields[0] + ";" + fields[2]);
+            if (reference == null) {
+                continue;
+            }
+            double accuracy = Double.parseDouble(fields[3]);
+            double referenceAccuracy = Double.parseDouble(reference[3]);
+            if (accuracy < referenceAccuracy - ACCURACY_TOLERANCE) {
+                regressions.add(String.format(Locale.ROOT, "%s %s: accuracy %.4f, baseline %.4f", fields[0], fields[2], accuracy, referenceAccuracy));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Compares the relative training times of the report lines with the lines of the baseline report.
+     *
+     * @return - description of every mode that became slower
+     */
+    static List<String> compareTimes(List<String> lines, List<String> baselineLines) {
+        Map<String, String[]> baseline = byDatasetAndMode(baselineLines);
+        List<String> slowdowns = new ArrayList<>();
+        for (String line : lines) {
+            String[] fields = line.split(";");
+            String[] reference = baseline.get(fields[0] + ";" + fields[2]);
+            if (reference == null) {
+                continue;
+            }
+            double relativeTime = Double.parseDouble(fields[6]);
+            double referenceTime = Double.parseDouble(reference[6]);
+            if (Double.parseDouble(fields[5]) >= MIN_COMPARED_MILLIS && relativeTime > referenceTime * TIME_TOLERANCE) {
+                slowdowns.add(String.format(Locale.ROOT, "%s %s: relative time %.3f, baseline %.3f", fields[0], fields[2], relativeTime, referenceTime));
+            }
+        }
+        return slowdowns;
+    }
+
+    /**
+     * @return - fields of the baseline lines by dataset and mode
+     */
+    private static Map<String, String[]> byDatasetAndMode(List<String> baselineLines) {
+        Map<String, String[]> baseline = new HashMap<>();
+        for (String line : baselineLines) {
+            if (!line.isEmpty() && !line.equals(HEADER)) {
+                String[] fields = line.split(";");
+                baseline.put(fields[0] + ";" + fields[2], fields);
+            }
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.benchmark;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.table.AttributeFactory;
+import com.rapidminer.example.utils.ExampleSetBuilder;
+import com.rapidminer.example.utils.ExampleSets;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.tools.Ontology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs of {@link com.rapidminer.rglvq.operator.AbstractModel} built without an operator, shared
+ * with the JMH benchmarks.
+ */
+public class TrainingFixtures {
+
+    private TrainingFixtures() {
+    }
+
+    /**
+     * Squared dissimilarities of a bundled dataset.
+     */
+    public static PackedSquaredDissimilarityMatrix squaredMatrix(ExperimentData data) {
+        int n = data.size();
+        PackedSquaredDissimilarityMatrix matrix = new PackedSquaredDissimilarityMatrix(n);
+        double[] row = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < n; k++) {
+                double value = data.getDissimilarities()[i][k];
+                row[k] = value * value;
+            }
+            matrix.setRow(i, row);
+        }
+        return matrix;
+    }
+
+    /**
+     * Squared Euclidean distances of points drawn from one Gaussian cluster per class.
+     *
+     * @param labels - target array of the class of every point
+     */
+    public static PackedSquaredDissimilarityMatrix clusters(int size, int classes, int dimensions, double[] labels, Random random) {
+        double[][] points = new double[size][dimensions];
+        for (int i = 0; i < size; i++) {
+            labels[i] = i % classes;
+            for (int d = 0; d < dimensions; d++) {
+                points[i][d] = random.nextGaussian() + (d % classes == labels[i] ? 2 : 0);
+            }
+        }
+        PackedSquaredDissimilarityMatrix matrix = new PackedSquaredDissimilarityMatrix(size);
+        for (int i = 0; i < size; i++) {
+            for (int k = i; k < size; k++) {
+                double sum = 0;
+                for (int d = 0; d < dimensions; d++) {
+                    double difference = points[i][d] - points[k][d];
+                    sum += difference * difference;
+                }
+                matrix.set(i, k, sum);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Picks random rows of every class as initial prototypes.
+     *
+     * @return - matrix row of every prototype, grouped by class
+     */
+    public static int[] prototypeRows(double[] labels, int prototypesPerClass, Random random) {
+        List<Double> classes = new ArrayList<>();
+        for (double label : labels) {
+            if (!classes.contains(label)) {
+                classes.add(label);
+            }
+        }
+        int[] rows = new int[classes.size() * prototypesPerClass];
+        for (int p = 0; p < rows.length; p++) {
+            int row;
+            do {
+                row = random.nextInt(labels.length);
+            } while (labels[row] != classes.get(p / prototypesPerClass));
+            rows[p] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Prototypes initialized with matrix rows of their class, as the operator does. The attributes are
+     * named after the matrix rows, so the set also serves as training set header for the model.
+     */
+    public static ExampleSet prototypes(SquaredDissimilarityMatrix matrix, double[] labels, int[] rows) {
+        int size = matrix.size();
+        List<Attribute> attributes = new ArrayList<>(size + 1);
+        for (int k = 0; k < size; k++) {
+            attributes.add(AttributeFactory.createAttribute("point" + k, Ontology.REAL));
+        }
+        Attribute label = AttributeFactory.createAttribute("label", Ontology.REAL);
+        attributes.add(label);
+        ExampleSetBuilder builder = ExampleSets.from(attributes).withRole(label, "label");
+        for (int row : rows) {
+            double[] values = new double[size + 1];
+            matrix.getRow(row, values);
+            values[size] = labels[row];
+            builder.addRow(values);
+        }
+        return builder.build();
+    }
+
+    public static int[] identity(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.benchmark.TrainingFixtures;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a complete training epoch through {@link AbstractModel#run(ExampleSet, double[])},
+ * including the set up of the sparse prototypes and their initial projections. Every invocation
+ * trains a new model from the same initial prototypes, online or in mini-batches.
+ * <p>
+ * Online epochs on 5000 points take about a minute, restrict the sizes with {@code -p size=100,1000}
+ * for a quick comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class EpochBenchmark {
+
+    private static final int DIMENSIONS = 10;
+    private static final double LEARNING_RATE = 0.3;
+    private static final long SEED = 2001;
+
+    @Param({"100", "1000", "5000"})
+    public int size;
+
+    @Param({"2", "8"})
+    public int classes;
+
+    @Param({"1", "4"})
+    public int prototypesPerClass;
+
+    @Param({"1", "256"})
+    public int batchSize;
+
+    private PackedSquaredDissimilarityMatrix matrix;
+    private double[] labels;
+    private int[] prototypeRows;
+    private int[] columnIndices;
+    private ExampleSet trainingSet;
+    private RGLVQModel model;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        labels = new double[size];
+        matrix = TrainingFixtures.clusters(size, classes, DIMENSIONS, labels, random);
+        prototypeRows = TrainingFixtures.prototypeRows(labels, prototypesPerClass, random);
+        columnIndices = TrainingFixtures.identity(size);
+        trainingSet = TrainingFixtures.prototypes(matrix, labels, columnIndices);
+    }
+
+    /**
+     * The model writes the trained coefficients into its prototype set, so both are created anew.
+     */
+    @Setup(Level.Invocation)
+    public void createModel() throws OperatorException {
+        model = new RGLVQModel(TrainingFixtures.prototypes(matrix, labels, prototypeRows), 1, LEARNING_RATE, matrix, columnIndices);
+        model.setBatchSize(batchSize);
+    }
+
+    @Benchmark
+    public ExampleSet epoch() throws OperatorException {
+        return model.run(trainingSet, labels);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.benchmark.TrainingFixtures;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the single RGLVQ kernels on synthetic Gaussian clusters: one distance through
+ * {@link DissimilarityMeasure#calculateDistance(double[], double[])}, one online {@link RGLVQModel#update()}
+ * and the scoring of all training points by the {@link RGLVQClassificationModel}. The prototypes are
+ * placed by one batch over all rows before the measurement.
+ * <p>
+ * Lives in the operator package to choose the current example of the online update directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+    private static final int DIMENSIONS = 10;
+    private static final double LEARNING_RATE = 0.3;
+    private static final long SEED = 2001;
+
+    @Param({"100", "1000", "5000"})
+    public int size;
+
+    @Param({"2", "8"})
+    public int classes;
+
+    @Param({"1", "4"})
+    public int prototypesPerClass;
+
+    private PackedSquaredDissimilarityMatrix matrix;
+    private SteppedModel model;
+    private double[] prototype; //Dense coefficients of the first prototype
+    private double[] exampleValues;
+    private int row;
+    private RGLVQClassificationModel classificationModel;
+    private ExampleSet scoringSet;
+    private Attribute predictedLabel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OperatorException {
+        Random random = new Random(SEED);
+        double[] labels = new double[size];
+        matrix = TrainingFixtures.clusters(size, classes, DIMENSIONS, labels, random);
+        int[] prototypeRows = TrainingFixtures.prototypeRows(labels, prototypesPerClass, random);
+        int[] columnIndices = TrainingFixtures.identity(size);
+        //the rows of the matrix with their labels, read by the model and scored by the classification model
+        scoringSet = TrainingFixtures.prototypes(matrix, labels, columnIndices);
+
+        model = new SteppedModel(TrainingFixtures.prototypes(matrix, labels, prototypeRows), matrix, columnIndices);
+        model.setBatchSize(size);
+        ExampleSet trainedPrototypes = model.run(scoringSet, labels);
+        model.setBatchSize(1);
+
+        prototype = model.getDensePrototypeValues(0);
+        exampleValues = new double[size];
+        classificationModel = new RGLVQClassificationModel(trainedPrototypes, scoringSet, matrix, columnIndices, model.COEFF_CUTOFF);
+        predictedLabel = RGLVQClassificationModel.createPredictionAttributes(scoringSet, scoringSet.getAttributes().getLabel());
+    }
+
+    /**
+     * Projects the prototypes back onto the simplex, as the end of an epoch does, so the coefficients
+     * stay in range however many updates an iteration performs.
+     */
+    @Setup(Level.Iteration)
+    public void normalize() {
+        model.normalizePrototypes();
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        matrix.getRow(nextRow(), exampleValues);
+        return model.measure.calculateDistance(prototype, exampleValues);
+    }
+
+    @Benchmark
+    public void update() {
+        model.step(nextRow());
+    }
+
+    /**
+     * One operation scores all {@link #size} rows.
+     */
+    @Benchmark
+    public ExampleSet performPrediction() throws OperatorException {
+        return classificationModel.performPrediction(scoringSet, predictedLabel);
+    }
+
+    private int nextRow() {
+        row = row + 1 < size ? row + 1 : 0;
+        return row;
+    }
+
+    /**
+     * Online model whose current example is set by the benchmark instead of an iteration over the training set.
+     */
+    private static final class SteppedModel extends RGLVQModel {
+
+        private int row;
+
+        SteppedModel(ExampleSet prototypes, SquaredDissimilarityMatrix matrix, int[] columnIndices) throws OperatorException {
+            super(prototypes, 1, LEARNING_RATE, matrix, columnIndices);
+        }
+
+        void step(int row) {
+            this.row = row;
+            exampleLabel = trainingLabels[row];
+            update();
+        }
+
+        @Override
+        protected int getCurrentExampleIndex() {
+            return row;
+        }
+    }
+}
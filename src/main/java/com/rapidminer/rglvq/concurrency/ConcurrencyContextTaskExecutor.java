@@ -0,0 +1,59 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.concurrency;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.rapidminer.core.concurrency.ConcurrencyContext;
+
+/**
+ * Runs the tasks in the thread pool of RapidMiner's concurrency context of an operator, so the
+ * number of threads respects the settings of Studio or Server and stopping the process is possible.
+ */
+public class ConcurrencyContextTaskExecutor implements TaskExecutor {
+
+    private final ConcurrencyContext context;
+    private final int parallelism;
+
+    /**
+     * @param context - concurrency context of the operator
+     * @param threads - maximal number of threads, 0 to use the parallelism of the context
+     */
+    public ConcurrencyContextTaskExecutor(ConcurrencyContext context, int threads) {
+        this.context = context;
+        int available = Math.max(1, context.getParallelism());
+        this.parallelism = threads > 0 ? Math.min(threads, available) : available;
+    }
+
+    @Override
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public <T> List<T> call(List<Callable<T>> tasks) throws ExecutionException {
+        return context.call(tasks);
+    }
+}
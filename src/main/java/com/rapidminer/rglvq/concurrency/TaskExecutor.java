@@ -0,0 +1,68 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.concurrency;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs independent tasks, e.g. the row blocks of a matrix-vector product. Decouples the kernels
+ * from RapidMiner's concurrency context, so they can be run sequentially as well.
+ */
+public interface TaskExecutor {
+
+    /**
+     * @return - number of tasks that are run at the same time, at least 1
+     */
+    int getParallelism();
+
+    /**
+     * Runs the tasks and waits for all of them.
+     *
+     * @param tasks - tasks to run
+     * @return - results of the tasks, in the order of the tasks
+     * @throws ExecutionException - if a task failed, the cause is the exception of the task
+     */
+    <T> List<T> call(List<Callable<T>> tasks) throws ExecutionException;
+
+    /**
+     * Unwraps the exception of a failed task, so the caller can rethrow it unchanged. Errors are thrown
+     * directly, runtime exceptions are returned as they are and checked exceptions, which the tasks of
+     * the caller are not expected to throw, are wrapped.
+     *
+     * @param e - exception thrown by {@link #call(List)}
+     * @param message - message of the wrapping exception for checked causes
+     * @return - exception to throw
+     */
+    static RuntimeException rethrow(ExecutionException e, String message) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(message, cause);
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.engine;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.ProcessStoppedException;
+import com.rapidminer.rglvq.concurrency.SequentialTaskExecutor;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.operator.AbstractModel;
+import com.rapidminer.rglvq.operator.BatchRGLVQModel;
+import com.rapidminer.rglvq.operator.MedianRGLVQModel;
+import com.rapidminer.rglvq.operator.RGLVQModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Trains RGLVQ prototypes on a squared dissimilarity matrix and integer class labels without
+ * ExampleSets, e.g. in batch jobs; an operator is only needed to stop the training with its process.
+ * The hyperparameters are set before the training; an engine can train several matrices one after
+ * the other, but not concurrently.
+ * <p>
+ * The training points are the rows of the matrix, the coefficients of a prototype belong to the
+ * training points of its class.
+ */
+public class RGLVQEngine {
+
+    public static final int TRAINING_MODE_ONLINE = 0;
+    public static final int TRAINING_MODE_BATCH = 1;
+    public static final int TRAINING_MODE_MEDIAN = 2;
+
+    private int trainingMode = TRAINING_MODE_ONLINE;
+    private int prototypesPerClass = 1;
+    private int iterations = 50;
+    private double learningRate = 0.1;
+    private int batchSize = 1;
+    private double costTolerance;
+    private double winnerChangeTolerance;
+    private TaskExecutor executor = SequentialTaskExecutor.INSTANCE;
+    private Random random = new Random();
+    private Operator operator;
+
+    /**
+     * @param trainingMode - {@link #TRAINING_MODE_ONLINE}, {@link #TRAINING_MODE_BATCH} or {@link #TRAINING_MODE_MEDIAN}
+     */
+    public void setTrainingMode(int trainingMode) {
+        if (trainingMode < TRAINING_MODE_ONLINE || trainingMode > TRAINING_MODE_MEDIAN) {
+            throw new IllegalArgumentException("Unknown training mode " + trainingMode);
+        }
+        this.trainingMode = trainingMode;
+    }
+
+    /**
+     * @param prototypesPerClass - number of prototypes of every class, used if no initial prototypes are given
+     */
+    public void setPrototypesPerClass(int prototypesPerClass) {
+        if (prototypesPerClass < 1) {
+            throw new IllegalArgumentException("At least one prototype per class is needed");
+        }
+        this.prototypesPerClass = prototypesPerClass;
+    }
+
+    /**
+     * @param iterations - epochs online, maximal L-BFGS iterations in batch mode, maximal epochs in median mode
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param learningRate - initial learning rate of the online training
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * @param batchSize - examples whose steps the online training averages, 1 updates after every example
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param costTolerance - change of the cost between two epochs, relative to max(|cost|, 1), below which the training stops, 0 disables
+     * @param winnerChangeTolerance - fraction of training points changing a winner below which the online training stops, 0 disables
+     */
+    public void setStoppingCriteria(double costTolerance, double winnerChangeTolerance) {
+        this.costTolerance = costTolerance;
+        this.winnerChangeTolerance = winnerChangeTolerance;
+    }
+
+    /**
+     * @param executor - executor the matrix-vector products and the mini-batches are split with
+     */
+    public void setExecutor(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param random - random generator of the initialization, for reproducible trainings
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * @param operator - operator whose stop requests end the training, null for trainings outside of a process
+     */
+    public void setOperator(Operator operator) {
+        this.operator = operator;
+    }
+
+    /**
+     * Trains prototypes that start at the dissimilarities of random training points of their class,
+     * like the codebooks of the operator: the square roots of their matrix rows.
+     *
+     * @param matrix - squared dissimilarities between the training points
+     * @param labels - class index of every matrix row
+     * @return - trained prototypes
+     * @throws ProcessStoppedException - if the process of the operator was stopped
+     */
+    public TrainedPrototypes train(SquaredDissimilarityMatrix matrix, int[] labels) throws ProcessStoppedException {
+        TreeMap<Integer, List<Integer>> classRows = new TreeMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            List<Integer> rows = classRows.get(labels[i]);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                classRows.put(labels[i], rows);
+            }
+            rows.add(i);
+        }
+        int numberOfPrototypes = classRows.size() * prototypesPerClass;
+        double[][] initialCoefficients = new double[numberOfPrototypes][matrix.size()];
+        int[] prototypeLabels = new int[numberOfPrototypes];
+        int j = 0;
+        for (List<Integer> rows : classRows.values()) {
+            for (int k = 0; k < prototypesPerClass; k++) {
+                int row = rows.get(random.nextInt(rows.size()));
+                double[] coefficients = initialCoefficients[j];
+                matrix.getRow(row, coefficients);
+                for (int c = 0; c < coefficients.length; c++) {
+                    coefficients[c] = Math.sqrt(coefficients[c]);
+                }
+                prototypeLabels[j] = labels[row];
+                j++;
+            }
+        }
+        return train(matrix, labels, initialCoefficients, prototypeLabels);
+    }
+
+    /**
+     * Trains the given initial prototypes. Coefficients of zero start at small random values, the
+     * coefficients of every prototype are normalized over the training points of its class.
+     *
+     * @param matrix - squared dissimilarities between the training points
+     * @param labels - class index of every matrix row
+     * @param initialCoefficients - initial coefficients of every prototype, one per matrix row
+     * @param prototypeLabels - class index of every prototype
+     * @return - trained prototypes
+     * @throws ProcessStoppedException - if the process of the operator was stopped
+     */
+    public TrainedPrototypes train(SquaredDissimilarityMatrix matrix, int[] labels, double[][] initialCoefficients, int[] prototypeLabels) throws ProcessStoppedException {
+        int size = matrix.size();
+        if (labels.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " labels, got " + labels.length);
+        }
+        if (initialCoefficients.length != prototypeLabels.length) {
+            throw new IllegalArgumentException("Expected " + initialCoefficients.length + " prototype labels, got " + prototypeLabels.length);
+        }
+        for (double[] coefficients : initialCoefficients) {
+            if (coefficients.length != size) {
+                throw new IllegalArgumentException("Expected " + size + " coefficients per prototype, got " + coefficients.length);
+            }
+        }
+        int[] columnIndices = new int[size];
+        double[] trainingLabels = new double[size];
+        for (int i = 0; i < size; i++) {
+            columnIndices[i] = i;
+            trainingLabels[i] = labels[i];
+        }
+        double[] initialLabels = new double[prototypeLabels.length];
+        for (int j = 0; j < prototypeLabels.length; j++) {
+            initialLabels[j] = prototypeLabels[j];
+        }
+
+        AbstractModel model = createModel(matrix, columnIndices);
+        model.train(initialCoefficients, initialLabels, trainingLabels);
+        return new TrainedPrototypes(model, prototypeLabels.clone(), size);
+    }
+
+    /**
+     * Creates the training model for the selected mode.
+     */
+    private AbstractModel createModel(SquaredDissimilarityMatrix matrix, int[] columnIndices) {
+        AbstractModel model;
+        if (trainingMode == TRAINING_MODE_BATCH) {
+            model = new BatchRGLVQModel(iterations, matrix, columnIndices);
+        } else if (trainingMode == TRAINING_MODE_MEDIAN) {
+            model = new MedianRGLVQModel(iterations, matrix, columnIndices);
+        } else {
+            RGLVQModel onlineModel = new RGLVQModel(iterations, learningRate, matrix, columnIndices);
+            onlineModel.setBatchSize(batchSize);
+            model = onlineModel;
+        }
+        model.setExecutor(executor);
+        model.setRandom(random);
+        model.setOperator(operator);
+        model.setStoppingCriteria(costTolerance, winnerChangeTolerance);
+        return model;
+    }
+}
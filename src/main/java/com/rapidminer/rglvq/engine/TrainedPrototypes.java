@@ -0,0 +1,119 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.engine;
+
+import com.rapidminer.rglvq.operator.AbstractModel;
+import com.rapidminer.rglvq.operator.TrainingTelemetry;
+
+import java.util.List;
+
+/**
+ * Result of {@link RGLVQEngine}: the class-sparse coefficients of every prototype, the cost of every
+ * epoch and the counters of the training.
+ */
+public class TrainedPrototypes {
+
+    private final int[] labels; //Class index of every prototype
+    private final int[][] supports; //Matrix rows the coefficients of every prototype belong to
+    private final double[][] coefficients;
+    private final int size; //Number of matrix rows
+    private final List<Double> costValues;
+    private final TrainingTelemetry telemetry;
+    private final double coefficientCutoff;
+
+    TrainedPrototypes(AbstractModel model, int[] labels, int size) {
+        this.labels = labels;
+        this.size = size;
+        supports = new int[labels.length][];
+        coefficients = new double[labels.length][];
+        for (int j = 0; j < labels.length; j++) {
+            supports[j] = model.getPrototypeSupport(j);
+            coefficients[j] = model.getPrototypeValues(j);
+        }
+        costValues = model.getCostFunctionValues();
+        telemetry = model.getTelemetry();
+        coefficientCutoff = model.COEFF_CUTOFF;
+    }
+
+    public int getNumberOfPrototypes() {
+        return labels.length;
+    }
+
+    /**
+     * @param j - prototype index
+     * @return - class index of the prototype
+     */
+    public int getLabel(int j) {
+        return labels[j];
+    }
+
+    /**
+     * @param j - prototype index
+     * @return - matrix rows of the training points of the class, ascending; must not be modified
+     */
+    public int[] getSupport(int j) {
+        return supports[j];
+    }
+
+    /**
+     * @param j - prototype index
+     * @return - coefficient of every row of {@link #getSupport(int)}, summing to 1; must not be modified
+     */
+    public double[] getCoefficients(int j) {
+        return coefficients[j];
+    }
+
+    /**
+     * @param j - prototype index
+     * @return - coefficients of the prototype for all matrix rows, zero outside of its class
+     */
+    public double[] getDenseCoefficients(int j) {
+        double[] dense = new double[size];
+        int[] support = supports[j];
+        for (int k = 0; k < support.length; k++) {
+            dense[support[k]] = coefficients[j][k];
+        }
+        return dense;
+    }
+
+    /**
+     * @return - cost of every epoch
+     */
+    public List<Double> getCostFunctionValues() {
+        return costValues;
+    }
+
+    /**
+     * @return - counters of every epoch
+     */
+    public TrainingTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @return - fraction of the largest coefficient of a prototype below which a classification model drops coefficients
+     */
+    public double getCoefficientCutoff() {
+        return coefficientCutoff;
+    }
+}
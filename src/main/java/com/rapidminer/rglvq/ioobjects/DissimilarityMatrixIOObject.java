@@ -0,0 +1,86 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.ioobjects;
+
+import com.rapidminer.operator.ResultObjectAdapter;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+
+import java.util.TreeSet;
+
+/**
+ * Squared dissimilarity matrix passed between operators without an ExampleSet of one attribute per
+ * training point. Optionally carries the class label of every row, so the RGLVQ operator can train
+ * from the matrix alone.
+ */
+public class DissimilarityMatrixIOObject extends ResultObjectAdapter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SquaredDissimilarityMatrix matrix;
+    private final double[] labels;
+
+    /**
+     * @param matrix - squared dissimilarities of the training points
+     * @param labels - numeric class label of every row, null if unknown
+     */
+    public DissimilarityMatrixIOObject(SquaredDissimilarityMatrix matrix, double[] labels) {
+        this.matrix = matrix;
+        this.labels = labels;
+    }
+
+    /**
+     * @return - squared dissimilarities of the training points
+     */
+    public SquaredDissimilarityMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return - numeric class label of every row, null if unknown
+     */
+    public double[] getLabels() {
+        return labels;
+    }
+
+    @Override
+    public String getName() {
+        return "Dissimilarity Matrix";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        description.append("Squared dissimilarity matrix of ").append(matrix.size()).append(" training points, ")
+                .append(matrix.getMemoryUsage() / 1024).append(" KB in memory");
+        if (labels != null) {
+            TreeSet<Double> classes = new TreeSet<>();
+            for (double label : labels) {
+                classes.add(label);
+            }
+            description.append(", labels of ").append(classes.size()).append(" classes");
+        } else {
+            description.append(", without labels");
+        }
+        return description.toString();
+    }
+}
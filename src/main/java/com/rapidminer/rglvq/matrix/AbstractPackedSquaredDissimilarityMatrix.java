@@ -0,0 +1,166 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Base of the {@link SquaredDissimilarityMatrix} implementations that keep only the upper triangle
+ * (including the diagonal) in one flat primitive array. Row i starts at offset i*n - i*(i-1)/2 and
+ * holds the columns i..n-1, the lower triangle is served by symmetry. The subclasses choose the
+ * element type and provide the two row operations of the symmetric kernel.
+ */
+public abstract class AbstractPackedSquaredDissimilarityMatrix extends WritableSquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Largest number of entries a single Java array can hold.
+     */
+    private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+    protected final int size;
+
+    /**
+     * @param size - number of training points
+     */
+    protected AbstractPackedSquaredDissimilarityMatrix(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of entries of the packed upper triangle of a matrix.
+     *
+     * @param size - number of rows
+     * @return - length of the packed array
+     * @throws IllegalArgumentException - if the triangle does not fit into a single array
+     */
+    static int packedLength(int size) {
+        long entries = (long) size * (size + 1) / 2;
+        if (entries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("A packed matrix can hold at most 65535 rows, requested " + size);
+        }
+        return (int) entries;
+    }
+
+    /**
+     * Returns the position of the diagonal entry of a row in the packed array.
+     *
+     * @param row - row index
+     * @return - offset of the row
+     */
+    protected int offset(int row) {
+        return (int) ((long) row * size - (long) row * (row - 1) / 2);
+    }
+
+    /**
+     * Sums a_ik·α_q over the support entries k = support[q] from the given cursor on, all of them at
+     * or right of the diagonal of the row.
+     *
+     * @param row - row index i
+     * @param rowOffset - offset of the row minus the row index, so column k is at rowOffset + k
+     * @param support - ascending column indices of the coefficients
+     * @param coefficient - coefficients parallel to the support
+     * @param from - first support entry to sum
+     * @return - the sum
+     */
+    protected abstract double gatherRow(int row, int rowOffset, int[] support, double[] coefficient, int from);
+
+    /**
+     * Adds a_ik·α_i to result[k] for every column k right of the diagonal of the row.
+     *
+     * @param row - row index i
+     * @param rowOffset - offset of the row minus the row index, so column k is at rowOffset + k
+     * @param coefficient - coefficient α_i of the row
+     * @param result - result array of the prototype
+     */
+    protected abstract void scatterRow(int row, int rowOffset, double coefficient, double[] result);
+
+    @Override
+    public boolean isUpperTriangular() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Symmetric kernel reading every packed value once: the stored part of row i contributes
+     * a_ik·α_k to entry i (gathered over the support) and a_ik·α_i to every entry k > i
+     * (only if i belongs to the support). All selected prototypes share the pass over the array.
+     * The support cursors find both the first entry right of the diagonal and the coefficient of
+     * the row itself, so no dense copies of the coefficients are needed.
+     */
+    @Override
+    public void multiplyRows(int[][] supports, double[][] coefficients, int[] selection, double[][] target, int rowFrom, int rowTo) {
+        int[] cursors = new int[selection.length];
+        for (int s = 0; s < selection.length; s++) {
+            //first support entry at or right of the diagonal of the first row
+            int q = Arrays.binarySearch(supports[selection[s]], rowFrom);
+            cursors[s] = q < 0 ? -q - 1 : q;
+        }
+        for (int i = rowFrom; i < rowTo; i++) {
+            int rowOffset = offset(i) - i;
+            for (int s = 0; s < selection.length; s++) {
+                int p = selection[s];
+                int[] support = supports[p];
+                double[] coefficient = coefficients[p];
+                double[] result = target[p];
+                //skip support entries left of the diagonal, they were handled as scatter of earlier rows
+                int q = cursors[s];
+                while (q < support.length && support[q] < i) {
+                    q++;
+                }
+                cursors[s] = q;
+                result[i] += gatherRow(i, rowOffset, support, coefficient, q);
+                if (q < support.length && support[q] == i && coefficient[q] != 0) {
+                    scatterRow(i, rowOffset, coefficient[q], result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Balances the ranges by the number of packed values, row i holds size - i of them.
+     */
+    @Override
+    public int[] partitionRows(int blocks) {
+        int[] boundaries = new int[blocks + 1];
+        long total = (long) size * (size + 1) / 2;
+        long stored = 0;
+        int row = 0;
+        for (int b = 1; b < blocks; b++) {
+            long goal = total * b / blocks;
+            while (row < size && stored + (size - row) <= goal) {
+                stored += size - row;
+                row++;
+            }
+            boundaries[b] = row;
+        }
+        boundaries[blocks] = size;
+        return boundaries;
+    }
+
+}
@@ -0,0 +1,578 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * Squared dissimilarity matrix together with the class labels of its training points, as read from
+ * or written to a file.
+ * <p>
+ * Text files hold one row of dissimilarities per line, separated by a single character and
+ * optionally followed by the numeric class label. The file is split into byte ranges that are read
+ * with positional NIO reads and parsed in parallel: a first pass counts the rows of every range, the
+ * second parses them straight into the matrix, squaring the dissimilarities on the fly. Every row
+ * must have one dissimilarity per row of the file, a zero diagonal and no negative or missing
+ * values. Symmetry is checked without keeping the lower triangle: every row sums its entries right
+ * of the diagonal and every column the entries below it, both weighted by the position of the other
+ * point, and the two sums must agree.
+ * <p>
+ * The binary format stores the squared dissimilarities right of the diagonal row by row, followed by
+ * the labels, so it is read without parsing or validation of the symmetry. All numbers are big
+ * endian: the magic number {@link #MAGIC}, the size, a flag whether labels follow, size * (size - 1) / 2
+ * doubles and size label doubles if the flag is set.
+ */
+public class DissimilarityMatrixFile {
+
+    /**
+     * "RDM1", first four bytes of the binary format.
+     */
+    public static final int MAGIC = 0x52444D31;
+
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Relative difference of the symmetry sums that is always accepted, they add the same values in a
+     * different order.
+     */
+    private static final double SUM_ROUNDING = 1E-12;
+
+    /**
+     * Number of byte ranges per parallel task, more ranges balance rows of different length.
+     */
+    private static final int RANGES_PER_TASK = 4;
+
+    private final SquaredDissimilarityMatrix matrix;
+    private final double[] labels;
+
+    /**
+     * @param matrix - squared dissimilarities
+     * @param labels - class label of every row, null if the file has none
+     */
+    public DissimilarityMatrixFile(SquaredDissimilarityMatrix matrix, double[] labels) {
+        if (labels != null && labels.length != matrix.size()) {
+            throw new IllegalArgumentException("Expected " + matrix.size() + " labels but got " + labels.length);
+        }
+        this.matrix = matrix;
+        this.labels = labels;
+    }
+
+    /**
+     * @return - squared dissimilarities
+     */
+    public SquaredDissimilarityMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return - class label of every row, null if the file has none
+     */
+    public double[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Reads a text file in parallel.
+     *
+     * @param file - one row of dissimilarities per line, blank lines are skipped
+     * @param separator - single byte character between the fields
+     * @param labelColumn - whether every line ends with the class label
+     * @param tolerance - largest absolute diagonal dissimilarity and largest relative difference of
+     *                  the weighted row and column sums
+     * @param storage - creates the empty matrix for the number of rows
+     * @param executor - executor of the parsing tasks
+     * @return - squared dissimilarities and labels
+     * @throws IOException - if the file cannot be read or is not a valid dissimilarity matrix
+     */
+    public static DissimilarityMatrixFile readText(File file, char separator, boolean labelColumn, double tolerance,
+                                                   IntFunction<? extends WritableSquaredDissimilarityMatrix> storage, TaskExecutor executor) throws IOException {
+        if (separator > 0x7F) {
+            throw new IOException("The column separator must be an ASCII character");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            int ranges = (int) Math.max(1, Math.min(executor.getParallelism() * RANGES_PER_TASK, length / BUFFER_SIZE));
+            long[] boundaries = new long[ranges + 1];
+            for (int r = 0; r <= ranges; r++) {
+                boundaries[r] = length * r / ranges;
+            }
+
+            List<Callable<Integer>> countTasks = new ArrayList<>(ranges);
+            for (int r = 0; r < ranges; r++) {
+                final long from = boundaries[r];
+                final long to = boundaries[r + 1];
+                countTasks.add(() -> new RangeParser(channel, from, to, (byte) separator).countRows());
+            }
+            List<Integer> rowCounts = call(executor, countTasks);
+            int[] firstRows = new int[ranges + 1];
+            for (int r = 0; r < ranges; r++) {
+                firstRows[r + 1] = firstRows[r] + rowCounts.get(r);
+            }
+            int size = firstRows[ranges];
+            if (size == 0) {
+                throw new IOException("The file holds no dissimilarities");
+            }
+
+            WritableSquaredDissimilarityMatrix matrix = storage.apply(size);
+            double[] labels = labelColumn ? new double[size] : null;
+            double[] rowSums = new double[size];
+            List<Callable<double[]>> parseTasks = new ArrayList<>(ranges);
+            for (int r = 0; r < ranges; r++) {
+                final long from = boundaries[r];
+                final long to = boundaries[r + 1];
+                final int firstRow = firstRows[r];
+                parseTasks.add(() -> new RangeParser(channel, from, to, (byte) separator)
+                        .parseRows(firstRow, size, tolerance, matrix, labels, rowSums));
+            }
+            double[] columnSums = new double[size];
+            for (double[] rangeSums : call(executor, parseTasks)) {
+                for (int k = 0; k < size; k++) {
+                    columnSums[k] += rangeSums[k];
+                }
+            }
+            for (int k = 0; k < size; k++) {
+                if (Math.abs(rowSums[k] - columnSums[k]) > (tolerance + SUM_ROUNDING) * Math.max(rowSums[k], columnSums[k])) {
+                    throw new IOException("The matrix is not symmetric: row " + (k + 1) + " differs from column " + (k + 1));
+                }
+            }
+            return new DissimilarityMatrixFile(matrix, labels);
+        }
+    }
+
+    /**
+     * Reads the binary format.
+     *
+     * @param file - file written by {@link #writeBinary(File)}
+     * @param storage - creates the empty matrix for the number of rows
+     * @return - squared dissimilarities and labels
+     * @throws IOException - if the file cannot be read or is not in the binary format
+     */
+    public static DissimilarityMatrixFile readBinary(File file, IntFunction<? extends WritableSquaredDissimilarityMatrix> storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            fill(channel, buffer, HEADER_BYTES);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary dissimilarity matrix file");
+            }
+            int size = buffer.getInt();
+            boolean hasLabels = buffer.getInt() != 0;
+            if (size <= 0) {
+                throw new IOException("The binary file holds no dissimilarities");
+            }
+            long expectedLength = HEADER_BYTES + ((long) size * (size - 1) / 2 + (hasLabels ? size : 0)) * Double.BYTES;
+            if (channel.size() != expectedLength) {
+                throw new IOException("The binary file should hold a matrix of " + size + " rows in " + expectedLength + " bytes but has " + channel.size());
+            }
+
+            WritableSquaredDissimilarityMatrix matrix = storage.apply(size);
+            double[] row = new double[size];
+            for (int i = 0; i < size; i++) {
+                for (int k = 0; k < i; k++) {
+                    row[k] = matrix.get(k, i);
+                }
+                row[i] = 0;
+                for (int k = i + 1; k < size; k++) {
+                    row[k] = nextDouble(channel, buffer);
+                    if (!(row[k] >= 0)) {
+                        throw new IOException("Row " + (i + 1) + ", column " + (k + 1) + ": squared dissimilarities must not be negative or missing");
+                    }
+                }
+                matrix.setRow(i, row);
+            }
+            double[] labels = null;
+            if (hasLabels) {
+                labels = new double[size];
+                for (int i = 0; i < size; i++) {
+                    labels[i] = nextDouble(channel, buffer);
+                }
+            }
+            return new DissimilarityMatrixFile(matrix, labels);
+        }
+    }
+
+    /**
+     * Writes the matrix and the labels in the binary format, replacing an existing file.
+     *
+     * @param file - target file
+     * @throws IOException - if the file cannot be written
+     */
+    public void writeBinary(File file) throws IOException {
+        int size = matrix.size();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(size).putInt(labels != null ? 1 : 0);
+            double[] row = new double[size];
+            for (int i = 0; i < size; i++) {
+                matrix.getRow(i, row);
+                for (int k = i + 1; k < size; k++) {
+                    putDouble(channel, buffer, row[k]);
+                }
+            }
+            if (labels != null) {
+                for (double label : labels) {
+                    putDouble(channel, buffer, label);
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static <T> List<T> call(TaskExecutor executor, List<Callable<T>> tasks) throws IOException {
+        try {
+            return executor.call(tasks);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw TaskExecutor.rethrow(e, "Parallel matrix parsing failed");
+        }
+    }
+
+    /**
+     * Reads at least the given number of bytes, the buffer is flipped for reading afterwards.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        buffer.clear();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of the binary file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static double nextDouble(FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Double.BYTES) {
+            buffer.compact();
+            while (buffer.position() < Double.BYTES) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of the binary file");
+                }
+            }
+            buffer.flip();
+        }
+        return buffer.getDouble();
+    }
+
+    private static void putDouble(FileChannel channel, ByteBuffer buffer, double value) throws IOException {
+        if (buffer.remaining() < Double.BYTES) {
+            drain(channel, buffer);
+        }
+        buffer.putDouble(value);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Weight of the entries of a column in the symmetry sums, pseudo random in [1, 2) so that
+     * differences of several entries hardly cancel out.
+     */
+    private static double symmetryWeight(int index) {
+        return 1 + ((index * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Reads the lines that start within a byte range of the file. The first line of a range that does
+     * not start at a line break belongs to the previous range, the last line may end behind the range.
+     */
+    private static final class RangeParser {
+
+        private static final double[] POWERS_OF_TEN = {1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9, 1E10,
+                1E11, 1E12, 1E13, 1E14, 1E15, 1E16, 1E17, 1E18, 1E19, 1E20, 1E21, 1E22};
+
+        private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+        private final FileChannel channel;
+        private final long to;
+        private final byte separator;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final byte[] bytes = buffer.array();
+        private long bufferStart;
+        private int bufferLimit;
+        private long position;
+        private byte[] field = new byte[64];
+        private int fieldLength;
+
+        RangeParser(FileChannel channel, long from, long to, byte separator) {
+            this.channel = channel;
+            this.to = to;
+            this.separator = separator;
+            this.position = from;
+            this.bufferStart = from;
+        }
+
+        /**
+         * @return - number of non-blank lines starting in the range
+         */
+        int countRows() throws IOException {
+            skipPartialLine();
+            int rows = 0;
+            while (position < to) {
+                boolean blank = true;
+                int b;
+                while ((b = read()) >= 0 && b != '\n') {
+                    blank &= isWhitespace(b);
+                }
+                if (!blank) {
+                    rows++;
+                }
+                if (b < 0) {
+                    break;
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Parses the rows of the range into the matrix.
+         *
+         * @return - weighted sums of the entries below the diagonal for every column
+         */
+        double[] parseRows(int firstRow, int size, double tolerance, WritableSquaredDissimilarityMatrix matrix,
+                           double[] labels, double[] rowSums) throws IOException {
+            skipPartialLine();
+            double[] columnSums = new double[size];
+            double[] values = new double[size];
+            int row = firstRow;
+            while (position < to) {
+                int b = nextField();
+                if (fieldLength == 0 && (b == '\n' || b < 0)) {
+                    if (b < 0) {
+                        break;
+                    }
+                    continue;
+                }
+                double upperSum = 0;
+                int column = 0;
+                while (true) {
+                    if (column < size) {
+                        double value = parseField(row, column);
+                        if (!(value >= 0)) {
+                            throw new IOException("Row " + (row + 1) + ", column " + (column + 1) + ": dissimilarities must not be negative or missing");
+                        }
+                        double squared = value * value;
+                        values[column] = squared;
+                        if (column < row) {
+                            columnSums[column] += symmetryWeight(row) * squared;
+                        } else if (column > row) {
+                            upperSum += symmetryWeight(column) * squared;
+                        } else if (value > tolerance) {
+                            throw new IOException("Row " + (row + 1) + " has a dissimilarity of " + value + " to itself");
+                        }
+                    } else if (labels != null && column == size) {
+                        labels[row] = parseField(row, column);
+                        if (Double.isNaN(labels[row])) {
+                            throw new IOException("Row " + (row + 1) + " has no label");
+                        }
+                    }
+                    column++;
+                    if (b == '\n' || b < 0) {
+                        break;
+                    }
+                    b = nextField();
+                }
+                int expected = labels != null ? size + 1 : size;
+                if (column != expected) {
+                    throw new IOException("Row " + (row + 1) + " has " + column + " fields but " + expected
+                            + " are expected for a matrix of " + size + " rows" + (labels != null ? " and a label column" : ""));
+                }
+                values[row] = 0;
+                matrix.setRow(row, values);
+                rowSums[row] = upperSum;
+                row++;
+                if (b < 0) {
+                    break;
+                }
+            }
+            return columnSums;
+        }
+
+        /**
+         * Moves to the start of the first line beginning in the range.
+         */
+        private void skipPartialLine() throws IOException {
+            if (position == 0) {
+                return;
+            }
+            position--;
+            bufferStart = position;
+            int b;
+            while ((b = read()) >= 0 && b != '\n') {
+                //skip the rest of the line of the previous range
+            }
+        }
+
+        /**
+         * Collects the next field without surrounding whitespace.
+         *
+         * @return - the byte that ended the field: the separator, a line break or -1 at the end of the file
+         */
+        private int nextField() throws IOException {
+            fieldLength = 0;
+            int b;
+            while ((b = read()) >= 0 && b != '\n' && b != separator) {
+                if (isWhitespace(b)) {
+                    continue;
+                }
+                if (fieldLength == field.length) {
+                    field = Arrays.copyOf(field, field.length * 2);
+                }
+                field[fieldLength++] = (byte) b;
+            }
+            return b;
+        }
+
+        private double parseField(int row, int column) throws IOException {
+            double value = parseDecimal();
+            if (Double.isNaN(value)) {
+                String text = new String(field, 0, fieldLength, StandardCharsets.ISO_8859_1);
+                try {
+                    value = Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Row " + (row + 1) + ", column " + (column + 1) + ": '" + text + "' is not a number");
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Parses plain decimal numbers whose digits and exponent are exactly representable, so that a
+         * single correctly rounded multiplication or division gives the same result as
+         * {@link Double#parseDouble(String)}.
+         *
+         * @return - the value or NaN if the field has to be parsed by {@link Double#parseDouble(String)}
+         */
+        private double parseDecimal() {
+            int i = 0;
+            boolean negative = false;
+            if (i < fieldLength && (field[i] == '-' || field[i] == '+')) {
+                negative = field[i] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean fraction = false;
+            for (; i < fieldLength; i++) {
+                byte c = field[i];
+                if (c >= '0' && c <= '9') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa >= MAX_EXACT_MANTISSA) {
+                        return Double.NaN;
+                    }
+                    digits++;
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (digits == 0) {
+                return Double.NaN;
+            }
+            if (i < fieldLength) {
+                if (field[i] != 'e' && field[i] != 'E' || ++i == fieldLength) {
+                    return Double.NaN;
+                }
+                boolean negativeExponent = false;
+                if (field[i] == '-' || field[i] == '+') {
+                    negativeExponent = field[i] == '-';
+                    if (++i == fieldLength) {
+                        return Double.NaN;
+                    }
+                }
+                int explicit = 0;
+                for (; i < fieldLength; i++) {
+                    byte c = field[i];
+                    if (c < '0' || c > '9' || explicit > 1000) {
+                        return Double.NaN;
+                    }
+                    explicit = explicit * 10 + (c - '0');
+                }
+                exponent += negativeExponent ? -explicit : explicit;
+            }
+            double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return Double.NaN;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * @return - next byte of the file or -1 at its end
+         */
+        private int read() throws IOException {
+            int index = (int) (position - bufferStart);
+            if (index >= bufferLimit) {
+                buffer.clear();
+                bufferStart = position;
+                while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+                    //positional reads leave the channel position alone, so the ranges share the channel
+                }
+                bufferLimit = buffer.position();
+                if (bufferLimit == 0) {
+                    return -1;
+                }
+                index = 0;
+            }
+            position++;
+            return bytes[index] & 0xFF;
+        }
+
+        private static boolean isWhitespace(int b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+    }
+}
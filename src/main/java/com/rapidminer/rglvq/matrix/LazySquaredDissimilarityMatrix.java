@@ -0,0 +1,247 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SquaredDissimilarityMatrix} whose values are computed on demand, e.g. from feature vectors,
+ * instead of being materialized. The first rows that are read are kept in a bounded cache and stay
+ * there, rows read after the cache is full are computed again on every access. Under the cyclic
+ * access of the training a least recently used cache smaller than the working set would miss every
+ * row, while pinned rows keep a hit rate of about the cached fraction. Every cached row is computed
+ * once, concurrent readers of a row in progress wait for it. Hits and misses of the row accesses are
+ * counted, the cache is safe for concurrent readers.
+ * <p>
+ * By symmetry D·α_p is the weighted sum of the rows in the support of α_p, so the matrix-vector kernel
+ * only reads the rows of the class supports, about N/C rows per prototype. A row that is not cached
+ * is only computed for the entries of the row block of the calling task.
+ */
+public abstract class LazySquaredDissimilarityMatrix extends SquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int size;
+    private final int cacheCapacity; //Maximal number of cached rows
+    private final ConcurrentHashMap<Integer, FutureTask<double[]>> rowCache = new ConcurrentHashMap<>();
+    private final AtomicInteger reservedRows = new AtomicInteger(); //Rows cached or being computed for the cache
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param size - number of training points
+     * @param cacheCapacity - maximal number of cached rows, each takes size * 8 bytes
+     */
+    protected LazySquaredDissimilarityMatrix(int size, int cacheCapacity) {
+        this.size = size;
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    /**
+     * Computes a single squared dissimilarity.
+     *
+     * @param row - row index
+     * @param column - column index, different from the row
+     * @return - d(x_row, x_column)^2
+     */
+    protected abstract double compute(int row, int column);
+
+    /**
+     * Computes a complete row, the diagonal entry is set to zero.
+     *
+     * @param row - row index
+     * @param target - array of {@link #size()} entries
+     */
+    protected void computeRow(int row, double[] target) {
+        for (int k = 0; k < size; k++) {
+            target[k] = k == row ? 0 : compute(row, k);
+        }
+    }
+
+    /**
+     * Returns a row from the cache, computing it once on its first access while the cache has room.
+     * The returned array must not be modified.
+     *
+     * @param row - row index
+     * @return - squared dissimilarities of the row, null if the row is not cached and the cache is full
+     */
+    protected double[] cachedRow(final int row) {
+        FutureTask<double[]> task = rowCache.get(row);
+        if (task == null) {
+            if (reservedRows.incrementAndGet() > cacheCapacity) {
+                reservedRows.decrementAndGet();
+                misses.increment();
+                return null;
+            }
+            FutureTask<double[]> computation = new FutureTask<>(() -> {
+                double[] values = new double[size];
+                computeRow(row, values);
+                return values;
+            });
+            task = rowCache.putIfAbsent(row, computation);
+            if (task == null) {
+                task = computation;
+                misses.increment();
+                computation.run();
+            } else {
+                //another reader cached the row first
+                reservedRows.decrementAndGet();
+                hits.increment();
+            }
+        } else {
+            hits.increment();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            //let a later access retry the row
+            if (rowCache.remove(row, task)) {
+                reservedRows.decrementAndGet();
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Computing row " + row + " failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for row " + row, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads the entry from a cached row or its mirrored row, otherwise computes it without caching.
+     */
+    @Override
+    public double get(int row, int column) {
+        if (row == column) {
+            return 0;
+        }
+        double[] values = completedRow(row);
+        if (values != null) {
+            return values[column];
+        } else if ((values = completedRow(column)) != null) {
+            return values[row];
+        }
+        return compute(row, column);
+    }
+
+    /**
+     * @param row - row index
+     * @return - the row if it is cached and computed, null otherwise
+     */
+    private double[] completedRow(int row) {
+        FutureTask<double[]> task = rowCache.get(row);
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void getRow(int row, double[] target) {
+        double[] values = cachedRow(row);
+        if (values == null) {
+            computeRow(row, target);
+        } else {
+            System.arraycopy(values, 0, target, 0, size);
+        }
+    }
+
+    /**
+     * Adds α_pk·row_k over the support of every prototype to the entries [rowFrom, rowTo), so only
+     * the support rows are read instead of every row of the range. Of a row that is not cached only
+     * the entries of the range are computed, so the row blocks share its computation.
+     */
+    @Override
+    public void multiplyRows(int[][] supports, double[][] coefficients, int[] selection, double[][] target, int rowFrom, int rowTo) {
+        for (int p : selection) {
+            int[] support = supports[p];
+            double[] coefficient = coefficients[p];
+            double[] result = target[p];
+            for (int k = 0; k < support.length; k++) {
+                double[] values = cachedRow(support[k]);
+                double weight = coefficient[k];
+                if (values == null) {
+                    for (int i = rowFrom; i < rowTo; i++) {
+                        if (i != support[k]) {
+                            result[i] += weight * compute(support[k], i);
+                        }
+                    }
+                    continue;
+                }
+                for (int i = rowFrom; i < rowTo; i++) {
+                    result[i] += weight * values[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - number of row accesses served by the cache
+     */
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return - number of row accesses that had to be computed
+     */
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return - fraction of the row accesses served by the cache, 0 before the first access
+     */
+    public double getCacheHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Counts the memory of the currently cached rows.
+     */
+    @Override
+    public long getMemoryUsage() {
+        return (long) rowCache.size() * size * Double.BYTES;
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap {@link SquaredDissimilarityMatrix} backed by a memory-mapped binary file. The complete
+ * rows are written once in row-major order, so every row and every block of consecutive rows is a
+ * contiguous region of the file. The kernel walks the rows in file order and lets the operating
+ * system page cache stream the matrix instead of holding it on the Java heap.
+ * <p>
+ * The file is mapped in chunks of whole rows because a single mapping is limited to 2 GB. It is
+ * deleted as soon as it is mapped where the platform allows that, otherwise when the JVM exits.
+ * Serializing the matrix converts it into a {@link PackedSquaredDissimilarityMatrix}.
+ */
+public class MappedSquaredDissimilarityMatrix extends WritableSquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int size;
+    private final int rowsPerChunk;
+    private final transient DoubleBuffer[] chunks;
+
+    /**
+     * Creates an empty matrix backed by a new temporary file.
+     *
+     * @param size - number of training points
+     * @param directory - directory of the temporary file, the default temporary directory if null
+     * @throws IOException - if the file cannot be created or mapped
+     */
+    public MappedSquaredDissimilarityMatrix(int size, File directory) throws IOException {
+        this.size = size;
+        long rowBytes = (long) Math.max(size, 1) * Double.BYTES;
+        this.rowsPerChunk = (int) Math.max(1, Math.min(size, Integer.MAX_VALUE / rowBytes));
+        int numberOfChunks = size == 0 ? 0 : (size + rowsPerChunk - 1) / rowsPerChunk;
+        this.chunks = new DoubleBuffer[numberOfChunks];
+
+        File file = File.createTempFile("rglvq-matrix", ".bin", directory);
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw"); FileChannel channel = access.getChannel()) {
+            access.setLength(rowBytes * size);
+            for (int c = 0; c < numberOfChunks; c++) {
+                int rows = Math.min(rowsPerChunk, size - c * rowsPerChunk);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, c * rowsPerChunk * rowBytes, rows * rowBytes);
+                chunks[c] = mapped.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            }
+        }
+        //the mappings stay valid, the space is released once they are garbage collected
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public void setRow(int row, double[] values) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk].duplicate();
+        chunk.position((row % rowsPerChunk) * size);
+        chunk.put(values, 0, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * size + column);
+    }
+
+    @Override
+    public void getRow(int row, double[] target) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk].duplicate();
+        chunk.position((row % rowsPerChunk) * size);
+        chunk.get(target, 0, size);
+    }
+
+    /**
+     * Walks the rows in file order and reads only the support columns of every row directly from
+     * the mapping, for all selected prototypes while the row is in cache. Nothing is copied or
+     * allocated besides a view of each chunk, so concurrent row blocks do not share positions.
+     */
+    @Override
+    public void multiplyRows(int[][] supports, double[][] coefficients, int[] selection, double[][] target, int rowFrom, int rowTo) {
+        int i = rowFrom;
+        while (i < rowTo) {
+            int chunkIndex = i / rowsPerChunk;
+            DoubleBuffer chunk = chunks[chunkIndex].duplicate();
+            int chunkEnd = Math.min(rowTo, (chunkIndex + 1) * rowsPerChunk);
+            for (; i < chunkEnd; i++) {
+                int rowOffset = (i % rowsPerChunk) * size;
+                for (int p : selection) {
+                    int[] support = supports[p];
+                    double[] coefficient = coefficients[p];
+                    double sum = 0;
+                    for (int q = 0; q < support.length; q++) {
+                        sum += chunk.get(rowOffset + support[q]) * coefficient[q];
+                    }
+                    target[p][i] += sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the mapped file, the matrix itself occupies no heap.
+     */
+    @Override
+    public long getMemoryUsage() {
+        return (long) size * size * Double.BYTES;
+    }
+
+    /**
+     * Mappings cannot be serialized, the matrix is written in packed form instead.
+     *
+     * @return - packed copy of this matrix
+     * @throws ObjectStreamException - never
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        PackedSquaredDissimilarityMatrix packed = new PackedSquaredDissimilarityMatrix(size);
+        double[] row = new double[size];
+        for (int i = 0; i < size; i++) {
+            getRow(i, row);
+            packed.setRow(i, row);
+        }
+        return packed;
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+/**
+ * In-memory {@link SquaredDissimilarityMatrix} that keeps the packed upper triangle as doubles, see
+ * {@link AbstractPackedSquaredDissimilarityMatrix} for the layout.
+ */
+public class PackedSquaredDissimilarityMatrix extends AbstractPackedSquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[] values;
+
+    /**
+     * Creates an empty matrix, all values are zero.
+     *
+     * @param size - number of training points
+     */
+    public PackedSquaredDissimilarityMatrix(int size) {
+        super(size);
+        this.values = new double[packedLength(size)];
+    }
+
+    /**
+     * Sets a squared dissimilarity, which also defines the mirrored entry.
+     *
+     * @param row - row index
+     * @param column - column index
+     * @param value - d(x_row, x_column)^2
+     */
+    public void set(int row, int column, double value) {
+        if (row > column) {
+            int swap = row;
+            row = column;
+            column = swap;
+        }
+        values[offset(row) + column - row] = value;
+    }
+
+    @Override
+    public void setRow(int row, double[] values) {
+        System.arraycopy(values, row, this.values, offset(row), size - row);
+    }
+
+    @Override
+    public double get(int row, int column) {
+        if (row > column) {
+            return values[offset(column) + row - column];
+        }
+        return values[offset(row) + column - row];
+    }
+
+    @Override
+    public void getRow(int row, double[] target) {
+        //lower part is stored as column "row" of the previous packed rows
+        for (int k = 0; k < row; k++) {
+            target[k] = values[offset(k) + row - k];
+        }
+        System.arraycopy(values, offset(row), target, row, size - row);
+    }
+
+    @Override
+    protected double gatherRow(int row, int rowOffset, int[] support, double[] coefficient, int from) {
+        double sum = 0;
+        for (int q = from; q < support.length; q++) {
+            sum += values[rowOffset + support[q]] * coefficient[q];
+        }
+        return sum;
+    }
+
+    @Override
+    protected void scatterRow(int row, int rowOffset, double coefficient, double[] result) {
+        for (int k = row + 1; k < size; k++) {
+            result[k] += values[rowOffset + k] * coefficient;
+        }
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return (long) values.length * Double.BYTES;
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import java.util.Arrays;
+
+/**
+ * {@link SquaredDissimilarityMatrix} over a sparse set of squared dissimilarities, e.g. the k nearest
+ * neighbours of every training point, stored in compressed sparse row (CSR) form. Both directions
+ * of every given pair are stored so the rows are symmetric.
+ * <p>
+ * Imputation rule: a pair without a stored value has the constant squared dissimilarity c, which
+ * defaults to the largest stored value (a point outside of the k nearest neighbours is at least as
+ * far away as any of them); the diagonal is always zero. With this rule
+ * (Dα)_i = c·(Σ_k α_k - α_i) + Σ_{k stored in row i} (d_ik - c)·α_k,
+ * so the matrix-vector products cost O(nnz + N) instead of O(N²).
+ */
+public class SparseSquaredDissimilarityMatrix extends SquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int size;
+    private final int[] rowPointers; //Row i holds the entries [rowPointers[i], rowPointers[i + 1])
+    private final int[] columns; //Ascending columns within every row
+    private final double[] values;
+    private final double missingValue; //Imputed squared dissimilarity c of the pairs without a stored value
+
+    private SparseSquaredDissimilarityMatrix(int size, int[] rowPointers, int[] columns, double[] values, double missingValue) {
+        this.size = size;
+        this.rowPointers = rowPointers;
+        this.columns = columns;
+        this.values = values;
+        this.missingValue = missingValue;
+    }
+
+    /**
+     * Builds the matrix from (row, column, squared dissimilarity) triplets. Pairs given in both
+     * directions or several times are averaged, diagonal entries are ignored.
+     *
+     * @param size - number of training points
+     * @param rows - row of every triplet, 0 based
+     * @param columns - column of every triplet, 0 based
+     * @param squaredValues - squared dissimilarity of every triplet
+     * @param missingValue - imputed squared dissimilarity of the pairs without a triplet, NaN for the largest given value
+     * @return - symmetric sparse matrix
+     * @throws IllegalArgumentException - if an index is out of range or a value is negative or not a number
+     */
+    public static SparseSquaredDissimilarityMatrix fromTriplets(int size, int[] rows, int[] columns, double[] squaredValues, double missingValue) {
+        int[] counts = new int[size + 1];
+        double largest = 0;
+        for (int t = 0; t < rows.length; t++) {
+            if (rows[t] < 0 || rows[t] >= size || columns[t] < 0 || columns[t] >= size) {
+                throw new IllegalArgumentException("Entry (" + (rows[t] + 1) + ", " + (columns[t] + 1) + ") is outside of a matrix of " + size + " points");
+            }
+            if (!(squaredValues[t] >= 0)) {
+                throw new IllegalArgumentException("Entry (" + (rows[t] + 1) + ", " + (columns[t] + 1) + ") has the invalid dissimilarity " + squaredValues[t]);
+            }
+            if (rows[t] != columns[t]) {
+                counts[rows[t] + 1]++;
+                counts[columns[t] + 1]++;
+                largest = Math.max(largest, squaredValues[t]);
+            }
+        }
+        //scatter both directions of every pair into unsorted rows
+        for (int i = 0; i < size; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[] fill = Arrays.copyOf(counts, size);
+        int[] unsortedColumns = new int[counts[size]];
+        double[] unsortedValues = new double[counts[size]];
+        for (int t = 0; t < rows.length; t++) {
+            if (rows[t] != columns[t]) {
+                unsortedColumns[fill[rows[t]]] = columns[t];
+                unsortedValues[fill[rows[t]]++] = squaredValues[t];
+                unsortedColumns[fill[columns[t]]] = rows[t];
+                unsortedValues[fill[columns[t]]++] = squaredValues[t];
+            }
+        }
+        //sort every row by column and average duplicate pairs
+        int[] rowPointers = new int[size + 1];
+        int[] sortedColumns = new int[counts[size]];
+        double[] sortedValues = new double[counts[size]];
+        int stored = 0;
+        for (int i = 0; i < size; i++) {
+            rowPointers[i] = stored;
+            int from = counts[i];
+            int to = counts[i + 1];
+            long[] order = new long[to - from];
+            for (int e = from; e < to; e++) {
+                order[e - from] = ((long) unsortedColumns[e] << 32) | (e - from);
+            }
+            Arrays.sort(order);
+            int e = 0;
+            while (e < order.length) {
+                int column = (int) (order[e] >>> 32);
+                double sum = 0;
+                int duplicates = 0;
+                for (; e < order.length && (int) (order[e] >>> 32) == column; e++) {
+                    sum += unsortedValues[from + (int) order[e]];
+                    duplicates++;
+                }
+                sortedColumns[stored] = column;
+                sortedValues[stored++] = sum / duplicates;
+            }
+        }
+        rowPointers[size] = stored;
+        return new SparseSquaredDissimilarityMatrix(size, rowPointers, Arrays.copyOf(sortedColumns, stored), Arrays.copyOf(sortedValues, stored),
+                Double.isNaN(missingValue) ? largest : missingValue);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        if (row == column) {
+            return 0;
+        }
+        int k = Arrays.binarySearch(columns, rowPointers[row], rowPointers[row + 1], column);
+        return k < 0 ? missingValue : values[k];
+    }
+
+    @Override
+    public void getRow(int row, double[] target) {
+        Arrays.fill(target, 0, size, missingValue);
+        target[row] = 0;
+        for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+            target[columns[k]] = values[k];
+        }
+    }
+
+    /**
+     * Every row only touches its stored entries plus the imputed constant, which is applied to the
+     * coefficient sum of the prototype.
+     */
+    @Override
+    public void multiplyRows(int[][] supports, double[][] coefficients, int[] selection, double[][] target, int rowFrom, int rowTo) {
+        double[][] denseCoefficients = new double[selection.length][size];
+        double[] coefficientSums = new double[selection.length];
+        for (int s = 0; s < selection.length; s++) {
+            int p = selection[s];
+            int[] support = supports[p];
+            for (int k = 0; k < support.length; k++) {
+                denseCoefficients[s][support[k]] = coefficients[p][k];
+                coefficientSums[s] += coefficients[p][k];
+            }
+        }
+        for (int i = rowFrom; i < rowTo; i++) {
+            int from = rowPointers[i];
+            int to = rowPointers[i + 1];
+            for (int s = 0; s < selection.length; s++) {
+                double[] dense = denseCoefficients[s];
+                double sum = missingValue * (coefficientSums[s] - dense[i]);
+                for (int k = from; k < to; k++) {
+                    sum += (values[k] - missingValue) * dense[columns[k]];
+                }
+                target[selection[s]][i] += sum;
+            }
+        }
+    }
+
+    /**
+     * Balances the ranges by the number of stored values plus one per row for the imputed part.
+     */
+    @Override
+    public int[] partitionRows(int blocks) {
+        int[] boundaries = new int[blocks + 1];
+        long total = (long) values.length + size;
+        int row = 0;
+        for (int b = 1; b < blocks; b++) {
+            long goal = total * b / blocks;
+            while (row < size && (long) rowPointers[row + 1] + row + 1 <= goal) {
+                row++;
+            }
+            boundaries[b] = row;
+        }
+        boundaries[blocks] = size;
+        return boundaries;
+    }
+
+    /**
+     * @return - number of stored values, counting both directions of every pair
+     */
+    public int getNumberOfStoredValues() {
+        return values.length;
+    }
+
+    /**
+     * @return - imputed squared dissimilarity of the pairs without a stored value
+     */
+    public double getMissingValue() {
+        return missingValue;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return (long) rowPointers.length * Integer.BYTES + (long) columns.length * Integer.BYTES + (long) values.length * Double.BYTES;
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Square, symmetric matrix of squared dissimilarities d(x_i, x_k)^2 between the training points.
+ * Implementations decide how the values are stored, the RGLVQ algorithm only accesses them through
+ * single values, rows and the fused matrix-vector kernel.
+ */
+public abstract class SquaredDissimilarityMatrix implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Returns the number of training points, i.e. the number of rows and columns.
+     *
+     * @return - size of the matrix
+     */
+    public abstract int size();
+
+    /**
+     * Returns a single squared dissimilarity.
+     *
+     * @param row - row index
+     * @param column - column index
+     * @return - d(x_row, x_column)^2
+     */
+    public abstract double get(int row, int column);
+
+    /**
+     * Copies a complete row into the target array.
+     *
+     * @param row - row index
+     * @param target - array of at least {@link #size()} entries
+     */
+    public abstract void getRow(int row, double[] target);
+
+    /**
+     * Computes D·α_p for the selected prototypes. The coefficients of every prototype are given over
+     * an ascending index set (its support), all other coefficients are zero.
+     *
+     * @param supports - ascending column indices of the coefficients of every prototype
+     * @param coefficients - coefficients of every prototype, parallel to the supports
+     * @param selection - distinct indices of the prototypes to multiply
+     * @param target - result arrays of {@link #size()} entries, indexed like the prototypes
+     */
+    public void multiply(int[][] supports, double[][] coefficients, int[] selection, double[][] target) {
+        for (int p : selection) {
+            Arrays.fill(target[p], 0, size(), 0);
+        }
+        multiplyRows(supports, coefficients, selection, target, 0, size());
+    }
+
+    /**
+     * Adds the contribution of the values stored for the rows [rowFrom, rowTo) to D·α_p. Summing the
+     * contributions of disjoint row ranges that cover the matrix yields D·α_p, which allows the
+     * ranges to be processed by different threads with their own target arrays. Implementations
+     * keeping one triangle only may add to entries outside of the range.
+     *
+     * @param supports - ascending column indices of the coefficients of every prototype
+     * @param coefficients - coefficients of every prototype, parallel to the supports
+     * @param selection - distinct indices of the prototypes to multiply
+     * @param target - arrays of {@link #size()} entries the contributions are added to
+     * @param rowFrom - first row, inclusive
+     * @param rowTo - last row, exclusive
+     */
+    public abstract void multiplyRows(int[][] supports, double[][] coefficients, int[] selection, double[][] target, int rowFrom, int rowTo);
+
+    /**
+     * Splits the rows into consecutive ranges of about the same amount of stored values.
+     *
+     * @param blocks - number of ranges
+     * @return - blocks + 1 ascending row boundaries, starting with 0 and ending with {@link #size()}
+     */
+    public int[] partitionRows(int blocks) {
+        int[] boundaries = new int[blocks + 1];
+        for (int b = 0; b <= blocks; b++) {
+            boundaries[b] = (int) ((long) size() * b / blocks);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Returns the number of bytes used to hold the values of the matrix.
+     *
+     * @return - memory usage in bytes
+     */
+    public abstract long getMemoryUsage();
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.matrix;
+
+/**
+ * {@link SquaredDissimilarityMatrix} that is filled row by row while the input is read.
+ */
+public abstract class WritableSquaredDissimilarityMatrix extends SquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stores the squared dissimilarities of one row. The matrix is expected to be symmetric,
+     * implementations keeping only one triangle read the entries from the diagonal on.
+     *
+     * @param row - row index
+     * @param values - squared dissimilarities of the row, {@link #size()} entries
+     */
+    public abstract void setRow(int row, double[] values);
+
+    /**
+     * Tells readers whether {@link #setRow(int, double[])} ignores the entries left of the diagonal,
+     * so they need not be read from the input.
+     *
+     * @return - true if only the upper triangle is stored
+     */
+    public boolean isUpperTriangular() {
+        return false;
+    }
+
+}
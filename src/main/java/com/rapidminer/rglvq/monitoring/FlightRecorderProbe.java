@@ -0,0 +1,215 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * {@link TrainingProbe} emitting Java Flight Recorder events. An event is only allocated if its type
+ * is enabled in a running recording, otherwise a begin method costs one flag check. Only loaded
+ * through {@link TrainingProbes}, the class needs the jdk.jfr module.
+ */
+public class FlightRecorderProbe implements TrainingProbe {
+
+    private static final EventType EPOCH = EventType.getEventType(EpochEvent.class);
+    private static final EventType UPDATE = EventType.getEventType(UpdateEvent.class);
+    private static final EventType MATRIX_PRODUCT = EventType.getEventType(MatrixProductEvent.class);
+    private static final EventType PREDICTION = EventType.getEventType(PredictionEvent.class);
+
+    @Override
+    public Object beginEpoch() {
+        if (!EPOCH.isEnabled()) {
+            return null;
+        }
+        EpochEvent event = new EpochEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endEpoch(Object handle, int epoch, int size, int prototypes, int batchSize, long updates) {
+        if (handle == null) {
+            return;
+        }
+        EpochEvent event = (EpochEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.size = size;
+            event.prototypes = prototypes;
+            event.batchSize = batchSize;
+            event.updates = updates;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginUpdate() {
+        if (!UPDATE.isEnabled()) {
+            return null;
+        }
+        UpdateEvent event = new UpdateEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endUpdate(Object handle, int row, int size, int prototypes) {
+        if (handle == null) {
+            return;
+        }
+        UpdateEvent event = (UpdateEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.row = row;
+            event.size = size;
+            event.prototypes = prototypes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginMatrixProduct() {
+        if (!MATRIX_PRODUCT.isEnabled()) {
+            return null;
+        }
+        MatrixProductEvent event = new MatrixProductEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endMatrixProduct(Object handle, int size, int prototypes, int blocks) {
+        if (handle == null) {
+            return;
+        }
+        MatrixProductEvent event = (MatrixProductEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.size = size;
+            event.prototypes = prototypes;
+            event.blocks = blocks;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginPrediction() {
+        if (!PREDICTION.isEnabled()) {
+            return null;
+        }
+        PredictionEvent event = new PredictionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endPrediction(Object handle, int examples, int prototypes, int coefficients) {
+        if (handle == null) {
+            return;
+        }
+        PredictionEvent event = (PredictionEvent) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.examples = examples;
+            event.prototypes = prototypes;
+            event.coefficients = coefficients;
+            event.commit();
+        }
+    }
+
+    @Name("com.rapidminer.rglvq.Epoch")
+    @Label("RGLVQ Epoch")
+    @Category({"RapidMiner", "RGLVQ"})
+    @Description("One epoch of the RGLVQ training")
+    static final class EpochEvent extends Event {
+
+        @Label("Epoch")
+        int epoch;
+
+        @Label("Training Points")
+        int size;
+
+        @Label("Prototypes")
+        int prototypes;
+
+        @Label("Batch Size")
+        int batchSize;
+
+        @Label("Updates")
+        long updates;
+    }
+
+    @Name("com.rapidminer.rglvq.Update")
+    @Label("RGLVQ Update")
+    @Category({"RapidMiner", "RGLVQ"})
+    @Description("Online update of the two winning prototypes of one training example")
+    static final class UpdateEvent extends Event {
+
+        @Label("Row")
+        int row;
+
+        @Label("Training Points")
+        int size;
+
+        @Label("Prototypes")
+        int prototypes;
+    }
+
+    @Name("com.rapidminer.rglvq.MatrixProduct")
+    @Label("RGLVQ Matrix Product")
+    @Category({"RapidMiner", "RGLVQ"})
+    @Description("Pass over the dissimilarity matrix computing the projections of several prototypes")
+    static final class MatrixProductEvent extends Event {
+
+        @Label("Matrix Rows")
+        int size;
+
+        @Label("Prototypes")
+        int prototypes;
+
+        @Label("Row Blocks")
+        int blocks;
+    }
+
+    @Name("com.rapidminer.rglvq.Prediction")
+    @Label("RGLVQ Prediction Chunk")
+    @Category({"RapidMiner", "RGLVQ"})
+    @Description("Chunk of examples scored by the RGLVQ classification model")
+    static final class PredictionEvent extends Event {
+
+        @Label("Examples")
+        int examples;
+
+        @Label("Prototypes")
+        int prototypes;
+
+        @Label("Coefficients")
+        int coefficients;
+    }
+}
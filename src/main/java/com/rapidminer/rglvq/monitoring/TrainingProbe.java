@@ -0,0 +1,73 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.monitoring;
+
+/**
+ * Instrumentation points of the training and the prediction. A begin method returns a handle that
+ * is passed to the matching end method, or null if nothing is recorded; end methods ignore null
+ * handles, so the instrumented code never branches on the recording state itself.
+ */
+public interface TrainingProbe {
+
+    Object beginEpoch();
+
+    /**
+     * @param handle - handle from {@link #beginEpoch()}
+     * @param epoch - number of the epoch, starting at 1
+     * @param size - number of training points N
+     * @param prototypes - number of prototypes P
+     * @param batchSize - examples per update
+     * @param updates - updates of the epoch
+     */
+    void endEpoch(Object handle, int epoch, int size, int prototypes, int batchSize, long updates);
+
+    Object beginUpdate();
+
+    /**
+     * @param handle - handle from {@link #beginUpdate()}
+     * @param row - matrix row of the training example
+     * @param size - number of training points N
+     * @param prototypes - number of prototypes P
+     */
+    void endUpdate(Object handle, int row, int size, int prototypes);
+
+    Object beginMatrixProduct();
+
+    /**
+     * @param handle - handle from {@link #beginMatrixProduct()}
+     * @param size - number of matrix rows N
+     * @param prototypes - number of prototypes multiplied in the pass
+     * @param blocks - row blocks the pass was split into
+     */
+    void endMatrixProduct(Object handle, int size, int prototypes, int blocks);
+
+    Object beginPrediction();
+
+    /**
+     * @param handle - handle from {@link #beginPrediction()}
+     * @param examples - examples scored by the chunk
+     * @param prototypes - number of prototypes P
+     * @param coefficients - coefficients of all compiled prototypes
+     */
+    void endPrediction(Object handle, int examples, int prototypes, int coefficients);
+}
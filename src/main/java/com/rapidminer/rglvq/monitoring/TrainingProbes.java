@@ -0,0 +1,97 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.monitoring;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the {@link TrainingProbe} of the extension. The Java Flight Recorder probe is loaded by name,
+ * so the extension still runs on JVMs without the jdk.jfr module and then records nothing.
+ */
+public final class TrainingProbes {
+
+    private static final String FLIGHT_RECORDER_PROBE = "com.rapidminer.rglvq.monitoring.FlightRecorderProbe";
+
+    /**
+     * Probe used by all models
+     */
+    public static final TrainingProbe PROBE = createProbe();
+
+    private TrainingProbes() {
+    }
+
+    private static TrainingProbe createProbe() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (TrainingProbe) Class.forName(FLIGHT_RECORDER_PROBE).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            Logger.getLogger(TrainingProbes.class.getName()).log(Level.FINE, "Java Flight Recorder is not available, RGLVQ events are disabled");
+        } catch (ReflectiveOperationException e) {
+            Logger.getLogger(TrainingProbes.class.getName()).log(Level.WARNING, "Cannot create the RGLVQ flight recorder probe", e);
+        }
+        return new Disabled();
+    }
+
+    /**
+     * Records nothing.
+     */
+    private static final class Disabled implements TrainingProbe {
+
+        @Override
+        public Object beginEpoch() {
+            return null;
+        }
+
+        @Override
+        public void endEpoch(Object handle, int epoch, int size, int prototypes, int batchSize, long updates) {
+        }
+
+        @Override
+        public Object beginUpdate() {
+            return null;
+        }
+
+        @Override
+        public void endUpdate(Object handle, int row, int size, int prototypes) {
+        }
+
+        @Override
+        public Object beginMatrixProduct() {
+            return null;
+        }
+
+        @Override
+        public void endMatrixProduct(Object handle, int size, int prototypes, int blocks) {
+        }
+
+        @Override
+        public Object beginPrediction() {
+            return null;
+        }
+
+        @Override
+        public void endPrediction(Object handle, int examples, int prototypes, int coefficients) {
+        }
+    }
+}
@@ -4,6 +4,12 @@ import com.rapidminer.example.Attribute;
 import com.rapidminer.example.Attributes;
 import com.rapidminer.example.Example;
 import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.ProcessStoppedException;
+import com.rapidminer.rglvq.concurrency.SequentialTaskExecutor;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.monitoring.TrainingProbes;
 import com.rapidminer.tools.LogService;
 
 import java.util.ArrayList;
@@ -13,43 +19,121 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 
 public abstract class AbstractModel{
 
-    ExampleSet prototypes;
-    private Example example; //Current example from the example set
-    double[] exampleValues; //double values retrived from the example set
-    double exampleLabel; //Current label
+    ExampleSet prototypes; //Prototypes of the ExampleSet interface, null if trained from arrays only
     Attributes prototypeAttributes; //List of attributes
     List<Attribute> trainingAttributes;
-    private final int attributesSize;
-    private final int numberOfPrototypes; //Number of prototypes and number of attributes
-    double[][] prototypeValues;
+    private int attributesSize;
+    private int numberOfPrototypes; //Number of prototypes and number of attributes
+    double[][] prototypeValues; //Coefficients of every prototype over its own class only
+    int[][] prototypeSupports; //Indices of the training points the coefficients belong to
     double[] prototypeLabels;
+    double[] trainingLabels; //Labels of the training points, one per matrix row
     Map<String, Object> storedValues;
-    double[][] squaredDissMatrix;
-    public double COEFF_CUTOFF = 1E-3;
+    SquaredDissimilarityMatrix squaredDissMatrix;
+    int[] columnIndices; //Position of the attribute belonging to every matrix row
+    DissimilarityMeasure measure;
+    TaskExecutor executor = SequentialTaskExecutor.INSTANCE; //Runs the parts of the training that are split across threads
+    private Random random = new Random(); //Own generator, so concurrent trainings neither contend for nor disturb each other's sequence
+    private Operator operator; //Operator whose stop requests end the training, null without one
+    double[][] prototypeProjections; //Cached D·α_j for every prototype
+    double[] prototypeSelfTerms; //Cached z_j = -1/2 * α_j * Dα_j for every prototype
+    double costTolerance; //Change of the cost per epoch relative to max(|cost|, 1) below which the training stops, 0 disables
+    double winnerChangeTolerance; //Fraction of training points changing a winner per epoch below which the training stops, 0 disables
+    private int[] winnerPairs; //Correct and incorrect winner of every training point after the last cost evaluation
+    private int[] projectedPairs; //Winners of every training point found by the current projected cost
+    double winnerChangeRate = 1; //Fraction of training points whose winners changed in the last cost evaluation
+    private long winnerChanges = -1; //Training points whose winners changed in the current epoch, negative if not evaluated
+    final TrainingTelemetry telemetry = new TrainingTelemetry(); //Counters of every epoch
+    public double COEFF_CUTOFF = 1E-3; //Coefficients below this fraction of the largest one of their prototype are dropped from the classification model
     //double [] labelList = new double [dissimilarityMatrix.length];
 
     public AbstractModel(ExampleSet prototypes) {
+        this();
+        setPrototypes(prototypes);
+    }
+
+    /**
+     * Constructor of a model trained from primitive arrays with {@link #train(double[][], double[], double[])}.
+     */
+    protected AbstractModel() {
+        storedValues = new HashMap<>();
+    }
 
+    /**
+     * Sets the prototypes {@link #run(ExampleSet, double[])} trains and writes the result into.
+     * @param prototypes - initial prototypes, one attribute per coefficient and a label
+     */
+    void setPrototypes(ExampleSet prototypes) {
         prototypeAttributes = prototypes.getAttributes();
         this.prototypes = prototypes;
         attributesSize = prototypeAttributes.size();
         numberOfPrototypes = prototypes.size();
-        storedValues = new HashMap<>();
+    }
+
+    /**
+     * Sets the random generator of the initialization, for reproducible trainings.
+     * @param random - random generator, used by this model only
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Sets the criteria the training stops at before the maximal number of iterations.
+     * @param costTolerance - change of the cost between two epochs, relative to max(|cost|, 1), below which the training stops, 0 disables
+     * @param winnerChangeTolerance - fraction of training points changing a winner below which the training stops, 0 disables
+     */
+    public void setStoppingCriteria(double costTolerance, double winnerChangeTolerance) {
+        this.costTolerance = costTolerance;
+        this.winnerChangeTolerance = winnerChangeTolerance;
+    }
+
+    /**
+     * Sets the executor the matrix-vector products of the training are split into row blocks with.
+     * @param executor - executor of the row blocks
+     */
+    public void setExecutor(TaskExecutor executor) {
+        this.executor = executor;
+        measure.setExecutor(executor);
+    }
+
+    /**
+     * Sets the operator whose stop requests are checked once per epoch and once per mini-batch.
+     * @param operator - training operator, null to train without stop checks
+     */
+    public void setOperator(Operator operator) {
+        this.operator = operator;
+    }
 
+    /**
+     * Ends the training if the process of the operator was stopped.
+     * @throws ProcessStoppedException - if the process was stopped
+     */
+    protected void checkForStop() throws ProcessStoppedException {
+        if (operator != null) {
+            operator.checkForStop();
+        }
     }
 
     /**
-     * This method draws single Examples from the ExampleSet and calls the RGLVQ update Method
+     * Trains the prototypes of the ExampleSet and writes the optimized coefficients back into them.
+     * The ExampleSet is only read to find the initial coefficients and the attribute order, the
+     * training itself runs on primitive arrays, see {@link #train(double[][], double[], double[])}.
+     * The matrix, the training set and the labels are only read, so one matrix can be shared by
+     * models trained in parallel; all training state belongs to this model.
      * @param trainingSet - training ExampleSet
+     * @param labelList - labels of the training points, one per matrix row
      *
      * @return - optimized Prototypes
+     * @throws ProcessStoppedException - if the process of the operator was stopped
      */
 
-    public ExampleSet run(ExampleSet trainingSet, double [] labelList) {
+    public ExampleSet run(ExampleSet trainingSet, double [] labelList) throws ProcessStoppedException {
         Attributes tempTrainingAttributes = trainingSet.getAttributes();
         trainingAttributes = new ArrayList<Attribute>(tempTrainingAttributes.size());
 
@@ -57,117 +141,323 @@ public abstract class AbstractModel{
         int j = 0;
 
         //Caching codebooks for faster optimization
-        prototypeValues = new double[numberOfPrototypes][attributesSize];
-        prototypeLabels = new double[numberOfPrototypes];
+        double[][] initialValues = new double[prototypes.size()][prototypeAttributes.size()];
+        double[] initialLabels = new double[prototypes.size()];
         for (Example p : prototypes) {
             j = 0;
             for (Attribute a : prototypeAttributes) {
-                prototypeValues[i][j] = p.getValue(a);
-                if(prototypeValues[i][j] == 0) {
-                    prototypeValues[i][j] = Math.random() + 0.1;
-                }
+                initialValues[i][j] = p.getValue(a);
                 j++;
             }
-            prototypeLabels[i] = p.getLabel();
+            initialLabels[i] = p.getLabel();
             i++;
         }
-        /*for(int z = 0; z < prototypeValues.length; z++) {
-            for (int x = 0; x < prototypeValues[0].length; x++) {
-                LogService.getRoot().log(Level.INFO, "Ducanh: prototypeValues withoutZero: " + prototypeValues[z][x]);
+
+        //Reordering attributes
+        for (Attribute b : prototypeAttributes) {
+            trainingAttributes.add(tempTrainingAttributes.get(b.getName()));
+        }
+
+        train(initialValues, initialLabels, labelList);
+
+        i = 0;
+        for (Example p : prototypes) {
+            double[] denseValues = getDensePrototypeValues(i);
+            j = 0;
+            for (Attribute b : prototypeAttributes) {
+                p.setValue(b, denseValues[j]);
+                j++;
             }
+            i++;
         }
-        for(int t = 0; t < labelList.length; t++) {
-            LogService.getRoot().log(Level.INFO, "Ducanh: labelList " + labelList[t]);
-        }*/
-        double [] uniqueLabels = Arrays.stream(prototypeLabels).distinct().toArray();
-        //set sparse representation of prototypes
-        for(i = 0; i < prototypeLabels.length; i++) {
-            for (j = 0; j < squaredDissMatrix[0].length; j++) {
-                if (prototypeLabels[i] != labelList[j]) {
-                    prototypeValues[i][j] = 0;
+        return prototypes;
+    }
+
+    /**
+     * Trains the prototypes without any ExampleSet. Coefficients of zero are replaced by small random
+     * values, only the coefficients of training points of the own class are kept and normalized to
+     * a sum of 1. The trained coefficients are read with {@link #getPrototypeSupport(int)} and
+     * {@link #getPrototypeValues(int)}.
+     * @param initialValues - initial coefficients of every prototype, one per attribute position, see the column indices
+     * @param initialLabels - label of every prototype
+     * @param labelList - labels of the training points, one per matrix row
+     * @throws ProcessStoppedException - if the process of the operator was stopped
+     */
+    public void train(double[][] initialValues, double[] initialLabels, double[] labelList) throws ProcessStoppedException {
+        numberOfPrototypes = initialValues.length;
+        attributesSize = numberOfPrototypes == 0 ? 0 : initialValues[0].length;
+        int i;
+        int j;
+
+        //set sparse representation of prototypes: only coefficients of training points with the same label are kept
+        prototypeValues = new double[numberOfPrototypes][];
+        prototypeSupports = new int[numberOfPrototypes][];
+        trainingLabels = labelList;
+        prototypeLabels = initialLabels.clone();
+        Map<Double, int[]> classSupports = new HashMap<>();
+        double[] values = new double[attributesSize];
+        for (i = 0; i < numberOfPrototypes; i++) {
+            for (j = 0; j < attributesSize; j++) {
+                values[j] = initialValues[i][j];
+                if (values[j] == 0) {
+                    values[j] = random.nextDouble() + 0.1;
                 }
-                //LogService.getRoot().log(Level.INFO, "Ducanh: sparsePrototypes: " + prototypeValues[i][j]);
+            }
+            int[] support = classSupports.get(prototypeLabels[i]);
+            if (support == null) {
+                support = getClassSupport(prototypeLabels[i], labelList);
+                classSupports.put(prototypeLabels[i], support);
+            }
+            prototypeSupports[i] = support;
+            prototypeValues[i] = new double[support.length];
+            for (j = 0; j < support.length; j++) {
+                prototypeValues[i][j] = values[columnIndices[support[j]]];
             }
         }
 
         //Normalize to 1
         double[] prototypeSum = new double[prototypeValues.length];
-        int k = 0;
-        int l = 0;
-        int m = 0;
-        double a = 0;
-
         for (i = 0; i < prototypeValues.length; i++){
-            for (j = 0; j < prototypeValues[0].length; j++) {
+            for (j = 0; j < prototypeValues[i].length; j++) {
                 prototypeSum[i] += prototypeValues[i][j];
             }
-            //k++;
         }
         for (i = 0; i < prototypeValues.length; i++) {
-            for (j = 0; j < prototypeValues[0].length; j++) {
+            for (j = 0; j < prototypeValues[i].length; j++) {
                 prototypeValues[i][j] = prototypeValues[i][j] / prototypeSum[i];
-                //LogService.getRoot().log(Level.INFO, "Ducanh: NormalizedPrototypes: " + prototypeValues[i][j]);
             }
         }
 
-        //Reordering attributes
-        for (Attribute b : prototypeAttributes) {
-            trainingAttributes.add(tempTrainingAttributes.get(b.getName()));
-        }
+        //Caching D·α_j and z_j of the initial prototypes
+        prototypeProjections = new double[numberOfPrototypes][squaredDissMatrix.size()];
+        prototypeSelfTerms = new double[numberOfPrototypes];
+        initializeProjections();
 
-        //fetch single rows from ExampleSet and call update Method
-        exampleValues = new double[prototypeAttributes.size()];
         do {
-            for (Example trainingExample : trainingSet) {
-                this.example = trainingExample;
-                i = 0;
-                for (Attribute attribute : trainingAttributes) {
-                    exampleValues[i] = trainingExample.getValue(attribute);
-                    i++;
+            checkForStop();
+            Object epochEvent = TrainingProbes.PROBE.beginEpoch();
+            telemetry.startEpoch(measure.getMatrixProducts(), measure.getMatrixProductNanos());
+            trainEpoch();
+            telemetry.endEpoch(winnerChanges, measure.getMatrixProducts(), measure.getMatrixProductNanos(), squaredDissMatrix.getMemoryUsage());
+            TrainingProbes.PROBE.endEpoch(epochEvent, telemetry.getEpochs().size(), squaredDissMatrix.size(), numberOfPrototypes,
+                    getBatchSize(), telemetry.getUpdates());
+            winnerChanges = -1;
+        } while (nextIteration());
+    }
+
+    /**
+     * Performs one epoch of the training: online updates, an optimizer iteration or exemplar moves,
+     * depending on the variant. The projections of all prototypes are up to date before and have to be
+     * up to date after the epoch.
+     */
+    protected abstract void trainEpoch() throws ProcessStoppedException;
+
+    /**
+     * Projects the coefficients of all prototypes back onto the simplex: negative coefficients are
+     * clipped and every prototype is normalized to a sum of 1.
+     */
+    protected void normalizePrototypes() {
+        double[] prototypeSum;
+        int i;
+        int j;
+        //set values to zero
+        for(int o = 0; o < prototypeValues.length; o++) {
+            for (int p = 0; p < prototypeValues[o].length; p++) {
+
+                if (prototypeValues[o][p] < 0) {
+                    prototypeValues[o][p] = 0;
+
                 }
-                exampleLabel = trainingExample.getLabel();
-                update();
             }
-            //set values to zero
-            for(int o = 0; o < prototypeValues.length; o++) {
-                for (int p = 0; p < prototypeValues[0].length; p++) {
+        }
+        //Normalize to 1
+        prototypeSum = new double[prototypeValues.length];
+        for ( i = 0; i < prototypeValues.length; i++){
+            for (j = 0; j < prototypeValues[i].length; j++) {
+                prototypeSum[i] += prototypeValues[i][j];
+            }
+            //k++;
+        }
+        for (i = 0; i < prototypeValues.length; i++) {
+            if (prototypeSum[i] <= 0) {
+                //every coefficient was clipped, restart the prototype from the mean of its class instead of dividing by zero
+                Arrays.fill(prototypeValues[i], 1);
+                prototypeSum[i] = prototypeValues[i].length;
+            }
+            for (j = 0; j < prototypeValues[i].length; j++) {
+                prototypeValues[i][j] = prototypeValues[i][j] / prototypeSum[i];
+                //LogService.getRoot().log(Level.INFO, "Ducanh: NormalizedPrototypes: " + prototypeValues[i][j]);
+            }
+        }
+        //clipping and normalization moved every prototype
+        updateProjections();
+    }
+
+    /**
+     * Returns the indices of all training points carrying the given label, in ascending order.
+     * @param label - label of the prototype
+     * @param labelList - labels of the training points, one per matrix row
+     * @return - support of the prototypes of this class
+     */
+    static int[] getClassSupport(double label, double[] labelList) {
+        int size = 0;
+        for (double l : labelList) {
+            if (l == label) {
+                size++;
+            }
+        }
+        int[] support = new int[size];
+        int k = 0;
+        for (int j = 0; j < labelList.length; j++) {
+            if (labelList[j] == label) {
+                support[k++] = j;
+            }
+        }
+        return support;
+    }
 
-                    if (prototypeValues[o][p] < 0) {
-                        prototypeValues[o][p] = 0;
 
+    /**
+     * Fills the cached projections and self-terms of the initial prototypes before the first epoch.
+     * Variants that place their prototypes differently can compute them without a pass over the matrix.
+     */
+    protected void initializeProjections() {
+        updateProjections();
+    }
+
+    /**
+     * Recomputes the cached projections and self-terms of all prototypes in a single pass over the matrix.
+     */
+    protected void updateProjections() {
+        int[] rows = new int[numberOfPrototypes];
+        for (int i = 0; i < numberOfPrototypes; i++) {
+            rows[i] = i;
+        }
+        updateProjections(rows);
+    }
+
+    /**
+     * Recomputes the cached projections D·α_j and self-terms z_j of the given prototypes in a single pass over the matrix.
+     * Has to be called whenever the coefficients of a prototype were changed.
+     * @param rows - rows of the prototypes that were changed
+     */
+    protected void updateProjections(int... rows) {
+        int[] selection = Arrays.stream(rows).distinct().toArray();
+        measure.projectAll(prototypeSupports, prototypeValues, selection, prototypeProjections);
+        for (int i : selection) {
+            prototypeSelfTerms[i] = measure.selfTerm(prototypeSupports[i], prototypeValues[i], prototypeProjections[i]);
+        }
+    }
+
+    /**
+     * Computes the GLVQ cost 1/N * Σ_i f(μ_i) of all training points from the cached projections, so it
+     * costs O(N·P) without a pass over the matrix. The projections have to be up to date. Also records
+     * the fraction of training points whose correct or incorrect winner changed since the last call.
+     * @return - mean sigmoid cost
+     */
+    protected double projectedCost() {
+        int size = trainingLabels.length;
+        if (projectedPairs == null) {
+            projectedPairs = new int[size];
+        }
+        double cost = 0;
+        for (int i = 0; i < size; i++) {
+            double closestCorrect = Double.MAX_VALUE;
+            double closestIncorrect = Double.MAX_VALUE;
+            int correct = -1;
+            int incorrect = -1;
+            for (int j = 0; j < numberOfPrototypes; j++) {
+                double distance = prototypeProjections[j][i] + prototypeSelfTerms[j];
+                if (prototypeLabels[j] == trainingLabels[i]) {
+                    if (distance < closestCorrect) {
+                        closestCorrect = distance;
+                        correct = j;
                     }
+                } else if (distance < closestIncorrect) {
+                    closestIncorrect = distance;
+                    incorrect = j;
                 }
             }
-            //Normalize to 1
-            prototypeSum = new double[prototypeValues.length];
-            k = 0;
-            a = 0;
-            for ( i = 0; i < prototypeValues.length; i++){
-                for (j = 0; j < prototypeValues[0].length; j++) {
-                    prototypeSum[i] += prototypeValues[i][j];
-                }
-                //k++;
-            }
-            for (i = 0; i < prototypeValues.length; i++) {
-                for (j = 0; j < prototypeValues[0].length; j++) {
-                    prototypeValues[i][j] = prototypeValues[i][j] / prototypeSum[i];
-                    //LogService.getRoot().log(Level.INFO, "Ducanh: NormalizedPrototypes: " + prototypeValues[i][j]);
-                }
+            projectedPairs[i] = correct * numberOfPrototypes + incorrect;
+            if (correct < 0 || incorrect < 0) {
+                continue;
             }
-        } while (nextIteration(trainingSet));
+            double denominator = closestCorrect + closestIncorrect + 1E-5;
+            denominator = denominator == 0 ? 1e-10 : denominator;
+            double mu = (closestCorrect - closestIncorrect) / denominator;
+            cost += 1 / (1 + Math.exp(-mu));
+        }
+        countWinnerChanges(projectedPairs);
+        telemetry.countDistances((long) size * numberOfPrototypes);
+        return cost / size;
+    }
 
-        i = 0;
-        for (Example p : prototypes) {
-            j = 0;
-            for (Attribute b : prototypeAttributes) {
-                p.setValue(b, prototypeValues[i][j]);
-                j++;
+    /**
+     * Compares the winners of every training point with the ones of the previous call and records the
+     * number of changes for the telemetry of the current epoch and the winner change rate.
+     * @param pairs - correct * P + incorrect winner of every training point, a missing winner counts as -1
+     */
+    protected void countWinnerChanges(int[] pairs) {
+        if (winnerPairs == null) {
+            winnerPairs = new int[pairs.length];
+            Arrays.fill(winnerPairs, -1);
+        }
+        int changes = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (winnerPairs[i] != pairs[i]) {
+                winnerPairs[i] = pairs[i];
+                changes++;
             }
-            i++;
         }
-        return prototypes;
+        winnerChangeRate = (double) changes / pairs.length;
+        winnerChanges = changes;
+    }
+
+    /**
+     * @return - number of examples applied together in one update
+     */
+    protected int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * @return - counters of every epoch of the training
+     */
+    public TrainingTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @param costValues - cost of every epoch so far
+     * @return - whether the cost changed less than the cost tolerance relative to the previous epoch
+     */
+    protected boolean isCostConverged(List<Double> costValues) {
+        return isCostConverged(costValues, costTolerance);
     }
 
+    /**
+     * Convergence rule shared by all variants, including the Nyström model that is not an AbstractModel.
+     * @param costValues - cost of every epoch so far
+     * @param costTolerance - change of the cost relative to max(|cost|, 1), 0 disables
+     * @return - whether the cost changed less than the cost tolerance relative to the previous epoch,
+     * a cost below 1 counts as 1 so that a cost close to zero does not require a vanishing change
+     */
+    static boolean isCostConverged(List<Double> costValues, double costTolerance) {
+        int epochs = costValues.size();
+        if (costTolerance <= 0 || epochs < 2) {
+            return false;
+        }
+        double previous = costValues.get(epochs - 2);
+        double current = costValues.get(epochs - 1);
+        return Math.abs(previous - current) < costTolerance * Math.max(Math.abs(previous), 1);
+    }
+
+    /**
+     * @return - whether fewer training points than the winner change tolerance changed a winner in the last cost evaluation
+     */
+    protected boolean isWinnerConverged() {
+        return winnerChangeRate < winnerChangeTolerance;
+    }
 
     /**
      * Returns total number of iterations (maximum number of iterations)
@@ -201,41 +491,48 @@ public abstract class AbstractModel{
      *
      * @return
      */
-    protected Example getCurrentExample() {
-        return example;
+    protected int getAttributesSize() {
+        return attributesSize;
     }
 
     /**
      *
      * @return
      */
-    protected double[] getCurrentExampleValues() {
-        return exampleValues;
+    public int getNumberOfPrototypes() {
+        return numberOfPrototypes;
     }
 
     /**
      *
+     * @param i
      * @return
      */
-    protected int getAttributesSize() {
-        return attributesSize;
+    public double[] getPrototypeValues(int i) {
+        return prototypeValues[i];
     }
 
     /**
      *
+     * @param i
      * @return
      */
-    protected int getNumberOfPrototypes() {
-        return numberOfPrototypes;
+    public int[] getPrototypeSupport(int i) {
+        return prototypeSupports[i];
     }
 
     /**
-     *
+     * Expands the class-sparse coefficients of a prototype to one value per training point.
      * @param i
      * @return
      */
-    protected double[] getPrototypeValues(int i) {
-        return prototypeValues[i];
+    public double[] getDensePrototypeValues(int i) {
+        double[] denseValues = new double[attributesSize];
+        int[] support = prototypeSupports[i];
+        for (int k = 0; k < support.length; k++) {
+            denseValues[columnIndices[support[k]]] = prototypeValues[i][k];
+        }
+        return denseValues;
     }
 
     /**
@@ -243,7 +540,7 @@ public abstract class AbstractModel{
      * @param i
      * @return
      */
-    protected double getPrototypeLabel(int i) {
+    public double getPrototypeLabel(int i) {
         return prototypeLabels[i];
     }
 
@@ -251,7 +548,7 @@ public abstract class AbstractModel{
      *
      * @return
      */
-    abstract boolean nextIteration(ExampleSet trainingSet);
+    abstract boolean nextIteration();
 
     /**
      * Method executed before the training starts.
@@ -267,11 +564,6 @@ public abstract class AbstractModel{
     public void afterTraining(ExampleSet trainingSet){
     }
 
-    /**
-     *
-     */
-    abstract void update();
-
     public final Object getStoredValue(String key) {
         return storedValues.get(key);
     }
@@ -0,0 +1,324 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.optimization.DifferentiableFunction;
+import com.rapidminer.rglvq.optimization.LimitedMemoryBFGS;
+import com.rapidminer.tools.LogService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Full-batch RGLVQ: minimizes the GLVQ cost E = 1/N * Σ_i f(μ_i) with the sigmoid f over all
+ * training points at once by L-BFGS. Every iteration is one step of the optimizer instead of an
+ * epoch of single updates.
+ * <p>
+ * With the weights c_ij = f'(μ_i)·∂μ_i/∂d_ij of the two winners of every training point, the
+ * gradient of prototype j is D·w_j - s_j·Dα_j, where w_j holds the weights c_ij of the points j
+ * won and s_j their sum. An evaluation therefore needs two passes over D, one for the projections
+ * of all prototypes and one for D·W, both split into row blocks by the {@link DissimilarityMeasure}.
+ * <p>
+ * The simplex constraint (α_j ≥ 0, Σ α_j = 1) is kept by optimizing α_j = softmax(θ_j) over the
+ * support of every prototype.
+ */
+public class BatchRGLVQModel extends AbstractModel {
+
+    /**
+     * Number of correction pairs of L-BFGS
+     */
+    private static final int MEMORY = 10;
+    /**
+     * Relative decrease of the cost below which the optimization stops
+     */
+    private static final double TOLERANCE = 1E-9;
+
+    private final int iterations; //Maximal number of L-BFGS iterations
+    private int currentIteration; //Iteration id
+    private final double time = 1; //Slope of the sigmoidal cost function
+    private final List<Double> costValues; //List of cost Function values
+    private LimitedMemoryBFGS optimizer;
+    private boolean converged;
+    private int[] offsets; //Position of the coefficients of every prototype in the parameter vector
+    private double[][] weightProjections; //D·w_j for every prototype
+    private int[][] weightRows; //Rows of the points every prototype won, sized for all points
+    private double[][] weights; //Weights c_ij of these rows
+    private int[][] supportRows; //Used part of the weight rows, handed to the projection
+    private double[][] supportWeights; //Used part of the weights
+    private int[] counts; //Number of points every prototype won
+    private double[] weightSums; //Sum s_j of the weights of every prototype
+    private int[] selection; //All prototypes
+    private int[] evaluatedPairs; //Correct * P + incorrect winner of every training point in the last evaluation
+
+    /**
+     * Constructor
+     *
+     * @param prototypes - initial prototypes
+     * @param iterations - maximal number of L-BFGS iterations
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the attribute belonging to every matrix row
+     * @throws OperatorException
+     */
+    public BatchRGLVQModel(ExampleSet prototypes, int iterations, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) throws OperatorException {
+        this(iterations, dissimilarityMatrix, columnIndices);
+        setPrototypes(prototypes);
+    }
+
+    /**
+     * Constructor of a model trained from primitive arrays with {@link #train(double[][], double[], double[])}.
+     *
+     * @param iterations - maximal number of L-BFGS iterations
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the coefficient belonging to every matrix row
+     */
+    public BatchRGLVQModel(int iterations, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) {
+        this.iterations = iterations;
+        this.currentIteration = 0;
+        this.costValues = new ArrayList<>(iterations);
+        this.squaredDissMatrix = dissimilarityMatrix;
+        this.columnIndices = columnIndices;
+        this.measure = new DissimilarityMeasure(dissimilarityMatrix);
+    }
+
+    /**
+     * Performs one L-BFGS iteration on all prototypes.
+     */
+    @Override
+    protected void trainEpoch() {
+        if (optimizer == null) {
+            optimizer = new LimitedMemoryBFGS(new CostFunction(), initialParameters(), MEMORY, TOLERANCE);
+        }
+        converged = !optimizer.iterate();
+        //the last evaluation of an iteration is the accepted point
+        countWinnerChanges(evaluatedPairs);
+        costValues.add(optimizer.getValue());
+        converged |= isCostConverged(costValues);
+        LogService.getRoot().log(Level.FINE, "RGLVQ batch iteration " + (currentIteration + 1) + ": cost " + optimizer.getValue()
+                + " after " + optimizer.getEvaluations() + " evaluations");
+    }
+
+    /**
+     * Every iteration evaluates all training points.
+     */
+    @Override
+    protected int getBatchSize() {
+        return squaredDissMatrix.size();
+    }
+
+    /**
+     * Returns true if the optimization has not converged and the maximal number of iterations is not reached
+     * @return - wether the next Iteration should be processed or not
+     */
+    @Override
+    public boolean nextIteration() {
+        currentIteration++;
+        return !converged && currentIteration < iterations;
+    }
+
+    /**
+     * Parameters θ_j = log α_j of the initial prototypes, the inverse of the softmax up to a constant.
+     */
+    private double[] initialParameters() {
+        offsets = new int[getNumberOfPrototypes() + 1];
+        for (int j = 0; j < getNumberOfPrototypes(); j++) {
+            offsets[j + 1] = offsets[j] + prototypeValues[j].length;
+        }
+        double[] parameters = new double[offsets[getNumberOfPrototypes()]];
+        for (int j = 0; j < getNumberOfPrototypes(); j++) {
+            for (int k = 0; k < prototypeValues[j].length; k++) {
+                parameters[offsets[j] + k] = Math.log(Math.max(prototypeValues[j][k], Double.MIN_NORMAL));
+            }
+        }
+        //the buffers of the evaluations, allocated once per run
+        int numberOfPrototypes = getNumberOfPrototypes();
+        int size = squaredDissMatrix.size();
+        weightProjections = new double[numberOfPrototypes][size];
+        weightRows = new int[numberOfPrototypes][size];
+        weights = new double[numberOfPrototypes][size];
+        supportRows = new int[numberOfPrototypes][0];
+        supportWeights = new double[numberOfPrototypes][0];
+        counts = new int[numberOfPrototypes];
+        weightSums = new double[numberOfPrototypes];
+        selection = new int[numberOfPrototypes];
+        evaluatedPairs = new int[size];
+        for (int j = 0; j < numberOfPrototypes; j++) {
+            selection[j] = j;
+        }
+        return parameters;
+    }
+
+    /**
+     * GLVQ cost over all training points as a function of the softmax parameters of all prototypes.
+     * Evaluating it leaves the coefficients and the cached projections at the evaluated point.
+     */
+    private class CostFunction implements DifferentiableFunction {
+
+        @Override
+        public double evaluate(double[] parameters, double[] gradient) {
+            int numberOfPrototypes = getNumberOfPrototypes();
+            int size = squaredDissMatrix.size();
+            for (int j = 0; j < numberOfPrototypes; j++) {
+                softmax(parameters, offsets[j], prototypeValues[j]);
+            }
+            //first pass over D: projections and self-terms of all prototypes
+            updateProjections();
+
+            //winners and weights c_ij of every training point, collected per prototype in ascending rows
+            Arrays.fill(counts, 0);
+            Arrays.fill(weightSums, 0);
+            double cost = 0;
+            for (int i = 0; i < size; i++) {
+                double closestCorrect = Double.MAX_VALUE;
+                double closestIncorrect = Double.MAX_VALUE;
+                int correct = -1;
+                int incorrect = -1;
+                for (int j = 0; j < numberOfPrototypes; j++) {
+                    double distance = prototypeProjections[j][i] + prototypeSelfTerms[j];
+                    if (prototypeLabels[j] == trainingLabels[i]) {
+                        if (distance < closestCorrect) {
+                            closestCorrect = distance;
+                            correct = j;
+                        }
+                    } else if (distance < closestIncorrect) {
+                        closestIncorrect = distance;
+                        incorrect = j;
+                    }
+                }
+                evaluatedPairs[i] = correct * numberOfPrototypes + incorrect;
+                if (correct < 0 || incorrect < 0) {
+                    continue;
+                }
+                double denominator = closestCorrect + closestIncorrect + 1E-5;
+                denominator = denominator == 0 ? 1e-10 : denominator;
+                double mu = (closestCorrect - closestIncorrect) / denominator;
+                double sigmoid = 1 / (1 + Math.exp(-time * mu));
+                cost += sigmoid;
+                double slope = time * sigmoid * (1 - sigmoid) / size;
+                //∂μ/∂d+ = (1 - μ) / denominator, ∂μ/∂d- = -(1 + μ) / denominator
+                addWeight(correct, i, slope * (1 - mu) / denominator);
+                addWeight(incorrect, i, -slope * (1 + mu) / denominator);
+            }
+
+            //second pass over D: D·w_j for all prototypes, the projection takes the number of
+            //entries from the arrays, which are only reallocated if the number of won points changed
+            for (int j = 0; j < numberOfPrototypes; j++) {
+                if (supportRows[j].length != counts[j]) {
+                    supportRows[j] = new int[counts[j]];
+                    supportWeights[j] = new double[counts[j]];
+                }
+                System.arraycopy(weightRows[j], 0, supportRows[j], 0, counts[j]);
+                System.arraycopy(weights[j], 0, supportWeights[j], 0, counts[j]);
+            }
+            measure.projectAll(supportRows, supportWeights, selection, weightProjections);
+
+            //gradient with respect to α_j over the support, then chain rule through the softmax
+            for (int j = 0; j < numberOfPrototypes; j++) {
+                int[] support = prototypeSupports[j];
+                double[] values = prototypeValues[j];
+                int offset = offsets[j];
+                double mean = 0;
+                for (int k = 0; k < support.length; k++) {
+                    int column = support[k];
+                    double g = weightProjections[j][column] - weightSums[j] * prototypeProjections[j][column];
+                    gradient[offset + k] = g;
+                    mean += values[k] * g;
+                }
+                for (int k = 0; k < support.length; k++) {
+                    gradient[offset + k] = values[k] * (gradient[offset + k] - mean);
+                }
+            }
+            telemetry.countDistances((long) size * numberOfPrototypes);
+            telemetry.countUpdates(1);
+            return cost / size;
+        }
+
+        private void addWeight(int prototype, int row, double weight) {
+            int count = counts[prototype]++;
+            weightRows[prototype][count] = row;
+            weights[prototype][count] = weight;
+            weightSums[prototype] += weight;
+        }
+
+        private void softmax(double[] parameters, int offset, double[] values) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < values.length; k++) {
+                max = Math.max(max, parameters[offset + k]);
+            }
+            double sum = 0;
+            for (int k = 0; k < values.length; k++) {
+                values[k] = Math.exp(parameters[offset + k] - max);
+                sum += values[k];
+            }
+            for (int k = 0; k < values.length; k++) {
+                values[k] /= sum;
+            }
+        }
+    }
+
+    /**
+     * Returns total number of iterations (maximum number of iterations)
+     *
+     * @return
+     */
+    @Override
+    public int getMaxIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns current iteration
+     *
+     * @return
+     */
+    @Override
+    public int getIteration() {
+        return currentIteration;
+    }
+
+    /**
+     * Returns the value of cost function
+     *
+     * @return
+     */
+    @Override
+    public double getCostFunctionValue() {
+        if (costValues.size() > 0)
+            return costValues.get(costValues.size() - 1);
+        return -1;
+    }
+
+    /**
+     * Returns list of cost function values
+     *
+     * @return
+     */
+    @Override
+    public List<Double> getCostFunctionValues() {
+        return costValues;
+    }
+}
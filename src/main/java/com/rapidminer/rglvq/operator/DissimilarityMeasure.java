@@ -23,68 +23,72 @@
 package com.rapidminer.rglvq.operator;
 
 
-import com.rapidminer.example.Attribute;
-import com.rapidminer.example.Attributes;
-import com.rapidminer.example.Example;
-import com.rapidminer.example.ExampleSet;
+import com.rapidminer.rglvq.concurrency.SequentialTaskExecutor;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.monitoring.TrainingProbes;
 import com.rapidminer.tools.LogService;
-import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 public class DissimilarityMeasure{ //extends DissMatrix{
 
-    private double[][] prototypeValues;
-    private static double [][] dissimilarityMatrix;
+    /**
+     * Products with fewer multiply-adds than this are not split into row blocks, the overhead of the
+     * tasks and of the per-block result arrays would dominate.
+     */
+    private static final long PARALLEL_WORK_THRESHOLD = 1L << 20;
+
+    /**
+     * Row blocks per thread, more blocks even out differences of the threads at the cost of more
+     * result arrays to reduce.
+     */
+    private static final int BLOCKS_PER_THREAD = 2;
+
+    //read-only and owned by the training run, several measures (e.g. of parallel operators) never share state
+    private final SquaredDissimilarityMatrix dissimilarityMatrix;
+    private final int[] allColumns; //Support of a dense prototype
     //private int attributesSize = 0;
-    List<Attribute> trainingAttributes;
+    private volatile TaskExecutor executor = SequentialTaskExecutor.INSTANCE;
+    private long products; //Number of prototypes multiplied with the matrix, read by the telemetry of the training
+    private long productNanos; //Wall time spent in the matrix-vector products
 
-    public DissimilarityMeasure(double[][]dissimilarityMatrix) {
+    public DissimilarityMeasure(SquaredDissimilarityMatrix dissimilarityMatrix) {
 
         this.dissimilarityMatrix = dissimilarityMatrix;
+        this.allColumns = new int[dissimilarityMatrix.size()];
+        for (int i = 0; i < allColumns.length; i++) {
+            allColumns[i] = i;
+        }
         //this.attributesSize = dissimilarityMatrix.length;
 
     }
 
+    /**
+     * Sets the executor the row blocks of the matrix-vector products are run with.
+     * @param executor - executor of the row blocks, sequential by default
+     */
+    public void setExecutor(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
 
 
     public double calculateDistance(double[] prototypes, double[] exampleValues) {
 
         //z
-        double[] matrixVector = new double[dissimilarityMatrix.length];//matrixvector[k].length = numberOfPrototypes
-        double z = 0;
-        double product = 0;
-        int i;
-        int j;
-        int k = 0;
-            //D * α_j
-        for (i = 0; i < dissimilarityMatrix.length; i++) {
-            for (j = 0; j < dissimilarityMatrix[0].length; j++) {
-
-                matrixVector[k] += dissimilarityMatrix[i][j] * prototypes[j];
-
-
-
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: dissMatrix: " + dissimilarityMatrix[i][j]);
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: prototype: " + prototypes[j]);
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: matrixVector[k]"+matrixVector[k]);
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: i"+i);
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: j"+j);
-                //LogService.getRoot().log(Level.INFO, "DisMeasure: k"+k);
-            }
-            k++;
-        }
-        //Dα_j * α_j
-        for (i = 0; i < matrixVector.length; i++) {
-            product += matrixVector[i] * prototypes[i];
-        }
-        z = (-0.5) * product;
+        double[] matrixVector = new double[dissimilarityMatrix.size()];//matrixvector[k].length = numberOfPrototypes
+        project(prototypes, matrixVector);
+        double z = selfTerm(prototypes, matrixVector);
         //LogService.getRoot().log(Level.INFO, "DisMeasure: z"+z);
 
         //A
-        i = 0;
+        int i = 0;
         double productA = 0; //α_j * D
         double distance = 0;
         for (double e : exampleValues) {
@@ -103,6 +107,178 @@ public class DissimilarityMeasure{ //extends DissMatrix{
 
     }
 
+    /**
+     * Computes the projection D·α_j of a prototype. Entry i of the result is the example part
+     * of the distance between row i of the matrix and the prototype.
+     * @param prototypes - coefficients α_j of the prototype
+     * @param matrixVector - target array, one entry per matrix row
+     */
+    public void project(double[] prototypes, double[] matrixVector) {
+        dissimilarityMatrix.multiply(new int[][]{allColumns}, new double[][]{prototypes}, new int[]{0}, new double[][]{matrixVector});
+    }
+
+    /**
+     * Computes the self-term z_j = -1/2 * α_j * Dα_j of a prototype from its projection.
+     * @param prototypes - coefficients α_j of the prototype
+     * @param matrixVector - projection D·α_j of the prototype
+     * @return - self-term z_j
+     */
+    public double selfTerm(double[] prototypes, double[] matrixVector) {
+        double product = 0;
+        //Dα_j * α_j
+        for (int i = 0; i < matrixVector.length; i++) {
+            product += matrixVector[i] * prototypes[i];
+        }
+        return (-0.5) * product;
+    }
+
+    /**
+     * Computes the self-term z_j of a class-sparse prototype from its projection.
+     * @param support - ascending column indices of the coefficients
+     * @param prototypes - class-sparse coefficients α_j of the prototype
+     * @param matrixVector - projection D·α_j of the prototype
+     * @return - self-term z_j
+     */
+    public double selfTerm(int[] support, double[] prototypes, double[] matrixVector) {
+        double product = 0;
+        //Dα_j * α_j, restricted to the rows of the support
+        for (int k = 0; k < support.length; k++) {
+            product += matrixVector[support[k]] * prototypes[k];
+        }
+        return (-0.5) * product;
+    }
+
+    /**
+     * Computes the projections D·α_j of several dense prototypes in one pass over the matrix,
+     * instead of streaming D once per prototype.
+     * @param prototypes - coefficients of all prototypes
+     * @param selection - distinct rows of the prototypes to project
+     * @param matrixVectors - target arrays, indexed like the prototypes
+     */
+    public void projectAll(double[][] prototypes, int[] selection, double[][] matrixVectors) {
+        int[][] supports = new int[prototypes.length][];
+        Arrays.fill(supports, allColumns);
+        multiply(supports, prototypes, selection, matrixVectors);
+    }
+
+    /**
+     * Sparse-times-dense variant of {@link #projectAll(double[][], int[], double[][])} for prototypes
+     * whose coefficients are stored over their own class only. Work per prototype is proportional to
+     * the size of its support instead of the number of training points.
+     * @param supports - ascending column indices of the coefficients of every prototype
+     * @param prototypes - class-sparse coefficients of all prototypes
+     * @param selection - distinct rows of the prototypes to project
+     * @param matrixVectors - target arrays, indexed like the prototypes
+     */
+    public void projectAll(int[][] supports, double[][] prototypes, int[] selection, double[][] matrixVectors) {
+        multiply(supports, prototypes, selection, matrixVectors);
+    }
+
+    /**
+     * @return - number of prototypes multiplied with the matrix so far
+     */
+    public long getMatrixProducts() {
+        return products;
+    }
+
+    /**
+     * @return - wall time of all matrix-vector products so far in nanoseconds
+     */
+    public long getMatrixProductNanos() {
+        return productNanos;
+    }
+
+    /**
+     * Times {@link #multiplyBlocks(int[][], double[][], int[], double[][])} and counts the products.
+     */
+    private void multiply(int[][] supports, double[][] prototypes, int[] selection, double[][] matrixVectors) {
+        Object productEvent = TrainingProbes.PROBE.beginMatrixProduct();
+        long start = System.nanoTime();
+        int blocks = multiplyBlocks(supports, prototypes, selection, matrixVectors);
+        productNanos += System.nanoTime() - start;
+        TrainingProbes.PROBE.endMatrixProduct(productEvent, dissimilarityMatrix.size(), selection.length, blocks);
+        products += selection.length;
+    }
+
+    /**
+     * Multiplies the matrix with the selected prototypes, split into row blocks if the executor has
+     * more than one thread. Every block adds its contribution to its own result arrays, which are
+     * summed afterwards, so the result equals the sequential one up to the order of the additions.
+     *
+     * @return - number of row blocks, 1 for a sequential product
+     */
+    private int multiplyBlocks(final int[][] supports, final double[][] prototypes, final int[] selection, double[][] matrixVectors) {
+        final SquaredDissimilarityMatrix matrix = dissimilarityMatrix;
+        final int size = matrix.size();
+        long work = 0;
+        for (int p : selection) {
+            work += (long) supports[p].length * size;
+        }
+        int parallelism = executor.getParallelism();
+        if (parallelism < 2 || work < PARALLEL_WORK_THRESHOLD) {
+            matrix.multiply(supports, prototypes, selection, matrixVectors);
+            return 1;
+        }
+        final int[] boundaries = matrix.partitionRows(Math.min(parallelism * BLOCKS_PER_THREAD, size));
+        List<Callable<double[][]>> tasks = new ArrayList<>(boundaries.length - 1);
+        for (int b = 0; b + 1 < boundaries.length; b++) {
+            final int rowFrom = boundaries[b];
+            final int rowTo = boundaries[b + 1];
+            tasks.add(new Callable<double[][]>() {
+
+                @Override
+                public double[][] call() {
+                    double[][] blockVectors = new double[prototypes.length][];
+                    for (int p : selection) {
+                        blockVectors[p] = new double[size];
+                    }
+                    matrix.multiplyRows(supports, prototypes, selection, blockVectors, rowFrom, rowTo);
+                    return blockVectors;
+                }
+            });
+        }
+        List<double[][]> blocks;
+        try {
+            blocks = executor.call(tasks);
+        } catch (ExecutionException e) {
+            throw TaskExecutor.rethrow(e, "Parallel matrix multiplication failed");
+        }
+        for (int p : selection) {
+            double[] target = matrixVectors[p];
+            Arrays.fill(target, 0, size, 0);
+            for (double[][] block : blocks) {
+                double[] blockVector = block[p];
+                for (int i = 0; i < size; i++) {
+                    target[i] += blockVector[i];
+                }
+            }
+        }
+        return blocks.size();
+    }
+
+    /**
+     * Computes the distances between an example and all prototypes, sharing one pass over the
+     * matrix for the self-terms of all prototypes.
+     * @param prototypes - coefficients of all prototypes
+     * @param exampleValues - squared dissimilarities of the example
+     * @param distances - target array with one entry per prototype
+     */
+    public void calculateDistances(double[][] prototypes, double[] exampleValues, double[] distances) {
+        int[] selection = new int[prototypes.length];
+        for (int p = 0; p < selection.length; p++) {
+            selection[p] = p;
+        }
+        double[][] matrixVectors = new double[prototypes.length][dissimilarityMatrix.size()];
+        projectAll(prototypes, selection, matrixVectors);
+        for (int p = 0; p < prototypes.length; p++) {
+            double productA = 0;
+            for (int i = 0; i < exampleValues.length; i++) {
+                productA += exampleValues[i] * prototypes[p][i];
+            }
+            distances[p] = productA + selfTerm(prototypes[p], matrixVectors[p]);
+        }
+    }
+
    /* @Override
     public double calculateSimilarity(double[] value1, double[] value2) {
         return -calculateDistance(value1, value2);
@@ -0,0 +1,67 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.rglvq.matrix.LazySquaredDissimilarityMatrix;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+/**
+ * Squared dissimilarities d(x_i, x_k)^2 of feature vectors under a RapidMiner {@link DistanceMeasure},
+ * computed when a row or an entry is first needed.
+ */
+public class DistanceMeasureSquaredDissimilarityMatrix extends LazySquaredDissimilarityMatrix {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[][] vectors; //Feature vector of every training point
+    private final DistanceMeasure distanceMeasure;
+
+    /**
+     * @param vectors - feature vector of every training point
+     * @param distanceMeasure - initialized distance measure
+     * @param cacheCapacity - maximal number of cached rows
+     */
+    public DistanceMeasureSquaredDissimilarityMatrix(double[][] vectors, DistanceMeasure distanceMeasure, int cacheCapacity) {
+        super(vectors.length, cacheCapacity);
+        this.vectors = vectors;
+        this.distanceMeasure = distanceMeasure;
+    }
+
+    @Override
+    protected double compute(int row, int column) {
+        double distance = distanceMeasure.calculateDistance(vectors[row], vectors[column]);
+        return distance * distance;
+    }
+
+    /**
+     * @param row - matrix row
+     * @return - feature vector of the training point
+     */
+    public double[] getVector(int row) {
+        return vectors[row];
+    }
+
+    public DistanceMeasure getDistanceMeasure() {
+        return distanceMeasure;
+    }
+}
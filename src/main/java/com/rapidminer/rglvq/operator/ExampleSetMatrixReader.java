@@ -0,0 +1,120 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.WritableSquaredDissimilarityMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Copies the dissimilarities of a full matrix ExampleSet into a {@link WritableSquaredDissimilarityMatrix}.
+ * The rows are split into blocks that are read in parallel through the random access of the example
+ * set, every block squares its rows into a buffer of one row and writes them straight into the target
+ * storage, so besides the ExampleSet the matrix is only held by the target. Storages keeping the upper
+ * triangle only get the values from the diagonal on, which halves the attribute accesses.
+ */
+public final class ExampleSetMatrixReader {
+
+    /**
+     * Number of row blocks per parallel task, more blocks balance slow and fast threads.
+     */
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private ExampleSetMatrixReader() {
+    }
+
+    /**
+     * Reads the squared dissimilarities of all rows.
+     *
+     * @param trainingSet - one example per training point
+     * @param matrixAttributes - regular attributes of the training set
+     * @param columnIndices - attribute position of the dissimilarities to every row
+     * @param target - empty matrix of columnIndices.length rows
+     * @param executor - executor of the row blocks
+     * @throws OperatorException - if reading a block failed, exceptions of the operator are passed on unchanged
+     */
+    public static void read(final ExampleSet trainingSet, Attribute[] matrixAttributes, int[] columnIndices,
+                            final WritableSquaredDissimilarityMatrix target, TaskExecutor executor) throws OperatorException {
+        final int size = columnIndices.length;
+        final Attribute[] columns = new Attribute[size];
+        for (int j = 0; j < size; j++) {
+            columns[j] = matrixAttributes[columnIndices[j]];
+        }
+        final boolean upperTriangle = target.isUpperTriangular();
+        int blocks = Math.max(1, Math.min(size, executor.getParallelism() * BLOCKS_PER_THREAD));
+        List<Callable<Void>> tasks = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            final int rowFrom = upperTriangle ? triangleBoundary(size, b, blocks) : (int) ((long) size * b / blocks);
+            final int rowTo = upperTriangle ? triangleBoundary(size, b + 1, blocks) : (int) ((long) size * (b + 1) / blocks);
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    double[] row = new double[size];
+                    for (int i = rowFrom; i < rowTo; i++) {
+                        Example example = trainingSet.getExample(i);
+                        for (int j = upperTriangle ? i : 0; j < size; j++) {
+                            double value = example.getValue(columns[j]);
+                            row[j] = value * value;
+                        }
+                        target.setRow(i, row);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            executor.call(tasks);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperatorException) {
+                throw (OperatorException) e.getCause();
+            }
+            throw new OperatorException("Reading the dissimilarity matrix failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * First row of a block of the upper triangle, the blocks hold about the same number of entries.
+     *
+     * @param size - number of rows
+     * @param block - block index, blocks for the end of the last block
+     * @param blocks - number of blocks
+     * @return - first row of the block
+     */
+    private static int triangleBoundary(int size, int block, int blocks) {
+        if (block >= blocks) {
+            return size;
+        }
+        //rows [0, r) hold size^2 - (size - r)^2 entries (halved), solve for a fraction of all entries
+        double remaining = Math.sqrt(1 - (double) block / blocks);
+        return Math.min(size, (int) Math.round(size * (1 - remaining)));
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.tools.LogService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+
+/**
+ * Median RGLVQ: every prototype is a training point (an exemplar) of its class instead of a convex
+ * combination of them. The distance of training point i to a prototype is the single matrix entry
+ * d(x_i, x_k)², and the compiled classification model needs one dissimilarity per prototype.
+ * <p>
+ * The GLVQ cost E = 1/N * Σ_i f(μ_i) is optimized over the discrete exemplars by coordinate
+ * descent: an epoch visits every prototype and moves it to the training point of its class with
+ * the lowest cost while all other prototypes are kept. With the closest correct and incorrect
+ * distances of the other prototypes cached, a candidate is evaluated with one matrix row, so an
+ * epoch reads every row of a class once per prototype of that class. The training stops once an
+ * epoch moves no prototype.
+ */
+public class MedianRGLVQModel extends AbstractModel {
+
+    /**
+     * Minimal number of candidates evaluated by one task
+     */
+    private static final int MIN_CANDIDATES_PER_TASK = 8;
+
+    private final int iterations; //Maximal number of epochs
+    private int currentIteration; //Iteration id
+    private final double time = 1; //Slope of the sigmoidal cost function
+    private final List<Double> costValues; //List of cost Function values
+    private int[] exemplars; //Matrix row of the training point of every prototype
+    private boolean converged;
+
+    /**
+     * Constructor
+     *
+     * @param prototypes - initial prototypes, every prototype starts at its largest coefficient
+     * @param iterations - maximal number of epochs
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the attribute belonging to every matrix row
+     * @throws OperatorException
+     */
+    public MedianRGLVQModel(ExampleSet prototypes, int iterations, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) throws OperatorException {
+        this(iterations, dissimilarityMatrix, columnIndices);
+        setPrototypes(prototypes);
+    }
+
+    /**
+     * Constructor of a model trained from primitive arrays with {@link #train(double[][], double[], double[])}.
+     *
+     * @param iterations - maximal number of epochs
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the coefficient belonging to every matrix row
+     */
+    public MedianRGLVQModel(int iterations, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) {
+        this.iterations = iterations;
+        this.currentIteration = 0;
+        this.costValues = new ArrayList<>(iterations);
+        this.squaredDissMatrix = dissimilarityMatrix;
+        this.columnIndices = columnIndices;
+        this.measure = new DissimilarityMeasure(dissimilarityMatrix);
+    }
+
+    /**
+     * Moves every prototype to the best exemplar of its class, one prototype after the other.
+     */
+    @Override
+    protected void trainEpoch() {
+        int size = squaredDissMatrix.size();
+        double[] otherCorrect = new double[size];
+        double[] otherIncorrect = new double[size];
+        boolean moved = false;
+        double cost = 0;
+        for (int j = 0; j < exemplars.length; j++) {
+            closestOthers(j, otherCorrect, otherIncorrect, null);
+            int[] candidates = prototypeSupports[j];
+            double[] candidateCosts = evaluateCandidates(j, candidates, otherCorrect, otherIncorrect);
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int c = 0; c < candidates.length; c++) {
+                //keep the current exemplar on ties, so the training terminates
+                if (candidateCosts[c] < bestCost || candidates[c] == exemplars[j] && candidateCosts[c] <= bestCost) {
+                    best = c;
+                    bestCost = candidateCosts[c];
+                }
+            }
+            if (candidates[best] != exemplars[j]) {
+                moved = true;
+                setExemplar(j, best);
+            }
+            cost = bestCost;
+        }
+        //winners of all prototypes after the moves of this epoch
+        int[] pairs = new int[size];
+        closestOthers(-1, otherCorrect, otherIncorrect, pairs);
+        countWinnerChanges(pairs);
+        costValues.add(cost / size);
+        converged = !moved || isCostConverged(costValues);
+        LogService.getRoot().log(Level.FINE, "RGLVQ median epoch " + (currentIteration + 1) + ": cost " + cost / size);
+    }
+
+    /**
+     * Starts every prototype at the training point of its largest initial coefficient instead of
+     * projecting the initial convex combinations.
+     */
+    @Override
+    protected void initializeProjections() {
+        exemplars = new int[prototypeValues.length];
+        for (int j = 0; j < prototypeValues.length; j++) {
+            int best = 0;
+            for (int k = 1; k < prototypeValues[j].length; k++) {
+                if (prototypeValues[j][k] > prototypeValues[j][best]) {
+                    best = k;
+                }
+            }
+            setExemplar(j, best);
+        }
+    }
+
+    /**
+     * Moves a prototype to a training point of its support. The projection D·α_j of the one-hot
+     * prototype is the matrix row of the exemplar, and z_j = -1/2 * d(x_k, x_k)² is 0, so the
+     * distances to the prototype are that row.
+     * @param j - row of the prototype
+     * @param position - position of the training point in the support of the prototype
+     */
+    private void setExemplar(int j, int position) {
+        exemplars[j] = prototypeSupports[j][position];
+        squaredDissMatrix.getRow(exemplars[j], prototypeProjections[j]);
+        prototypeSelfTerms[j] = -0.5 * prototypeProjections[j][exemplars[j]];
+        Arrays.fill(prototypeValues[j], 0);
+        prototypeValues[j][position] = 1;
+    }
+
+    /**
+     * Finds for every training point the closest correct and incorrect distance over all prototypes but one.
+     * @param excluded - row of the prototype that is left out, negative to use all prototypes
+     * @param otherCorrect - target for the closest distance to a prototype with the label of the point
+     * @param otherIncorrect - target for the closest distance to a prototype with another label
+     * @param pairs - target for correct * P + incorrect winner of every training point, null if not needed
+     */
+    private void closestOthers(int excluded, double[] otherCorrect, double[] otherIncorrect, int[] pairs) {
+        int prototypes = exemplars.length;
+        telemetry.countDistances((long) otherCorrect.length * (excluded < 0 ? prototypes : prototypes - 1));
+        Arrays.fill(otherCorrect, Double.MAX_VALUE);
+        Arrays.fill(otherIncorrect, Double.MAX_VALUE);
+        int[] correctWinners = new int[pairs == null ? 0 : pairs.length];
+        int[] incorrectWinners = new int[correctWinners.length];
+        Arrays.fill(correctWinners, -1);
+        Arrays.fill(incorrectWinners, -1);
+        for (int j = 0; j < prototypes; j++) {
+            if (j == excluded) {
+                continue;
+            }
+            double[] projections = prototypeProjections[j];
+            double selfTerm = prototypeSelfTerms[j];
+            for (int i = 0; i < projections.length; i++) {
+                double distance = projections[i] + selfTerm;
+                if (prototypeLabels[j] == trainingLabels[i]) {
+                    if (distance < otherCorrect[i]) {
+                        otherCorrect[i] = distance;
+                        if (pairs != null) {
+                            correctWinners[i] = j;
+                        }
+                    }
+                } else if (distance < otherIncorrect[i]) {
+                    otherIncorrect[i] = distance;
+                    if (pairs != null) {
+                        incorrectWinners[i] = j;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < correctWinners.length; i++) {
+            pairs[i] = correctWinners[i] * prototypes + incorrectWinners[i];
+        }
+    }
+
+    /**
+     * Computes the cost of every candidate exemplar of a prototype, split into tasks over the candidates.
+     * @param j - row of the prototype
+     * @param candidates - matrix rows of the candidates
+     * @param otherCorrect - closest correct distances of the other prototypes
+     * @param otherIncorrect - closest incorrect distances of the other prototypes
+     * @return - summed cost over all training points for every candidate
+     */
+    private double[] evaluateCandidates(final int j, final int[] candidates, final double[] otherCorrect, final double[] otherIncorrect) {
+        final double[] candidateCosts = new double[candidates.length];
+        int tasks = Math.max(1, Math.min(executor.getParallelism(), candidates.length / MIN_CANDIDATES_PER_TASK));
+        List<Callable<Void>> calls = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) candidates.length * t / tasks);
+            final int to = (int) ((long) candidates.length * (t + 1) / tasks);
+            calls.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    double[] candidateDistances = new double[otherCorrect.length];
+                    for (int c = from; c < to; c++) {
+                        squaredDissMatrix.getRow(candidates[c], candidateDistances);
+                        candidateCosts[c] = cost(j, candidateDistances, otherCorrect, otherIncorrect);
+                    }
+                    return null;
+                }
+            });
+        }
+        telemetry.countDistances((long) candidates.length * otherCorrect.length);
+        telemetry.countUpdates(candidates.length);
+        try {
+            executor.call(calls);
+        } catch (ExecutionException e) {
+            throw TaskExecutor.rethrow(e, "Parallel evaluation of the exemplars failed");
+        }
+        return candidateCosts;
+    }
+
+    /**
+     * @param j - row of the prototype placed on the candidate
+     * @param candidateDistances - squared dissimilarities of all training points to the candidate
+     * @param otherCorrect - closest correct distances of the other prototypes
+     * @param otherIncorrect - closest incorrect distances of the other prototypes
+     * @return - summed sigmoid cost Σ_i f(μ_i) of all training points
+     */
+    private double cost(int j, double[] candidateDistances, double[] otherCorrect, double[] otherIncorrect) {
+        double cost = 0;
+        for (int i = 0; i < candidateDistances.length; i++) {
+            double closestCorrect = otherCorrect[i];
+            double closestIncorrect = otherIncorrect[i];
+            if (prototypeLabels[j] == trainingLabels[i]) {
+                closestCorrect = Math.min(closestCorrect, candidateDistances[i]);
+            } else {
+                closestIncorrect = Math.min(closestIncorrect, candidateDistances[i]);
+            }
+            if (closestCorrect == Double.MAX_VALUE || closestIncorrect == Double.MAX_VALUE) {
+                continue;
+            }
+            double denominator = closestCorrect + closestIncorrect + 1E-5;
+            double mu = (closestCorrect - closestIncorrect) / denominator;
+            cost += 1 / (1 + Math.exp(-time * mu));
+        }
+        return cost;
+    }
+
+    /**
+     * Returns true if the last epoch moved a prototype and the maximal number of epochs is not reached
+     * @return - wether the next Iteration should be processed or not
+     */
+    @Override
+    public boolean nextIteration() {
+        currentIteration++;
+        return !converged && currentIteration < iterations;
+    }
+
+    /**
+     * Returns the matrix row of the exemplar of every prototype.
+     *
+     * @return
+     */
+    public int[] getExemplars() {
+        return exemplars;
+    }
+
+    /**
+     * Returns total number of iterations (maximum number of iterations)
+     *
+     * @return
+     */
+    @Override
+    public int getMaxIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns current iteration
+     *
+     * @return
+     */
+    @Override
+    public int getIteration() {
+        return currentIteration;
+    }
+
+    /**
+     * Returns the value of cost function
+     *
+     * @return
+     */
+    @Override
+    public double getCostFunctionValue() {
+        if (costValues.size() > 0)
+            return costValues.get(costValues.size() - 1);
+        return -1;
+    }
+
+    /**
+     * Returns list of cost function values
+     *
+     * @return
+     */
+    @Override
+    public List<Double> getCostFunctionValues() {
+        return costValues;
+    }
+}
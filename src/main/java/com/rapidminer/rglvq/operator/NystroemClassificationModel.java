@@ -0,0 +1,161 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.set.ExampleSetUtilities;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.learner.PredictionModel;
+import com.rapidminer.rglvq.concurrency.ConcurrencyContextTaskExecutor;
+import com.rapidminer.rglvq.concurrency.SequentialTaskExecutor;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.studio.internal.Resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Nearest prototype classification in the {@link NystroemEmbedding} of the landmarks. An example
+ * only needs its dissimilarities to the m landmarks, scoring costs O(r·m) for the embedding plus
+ * O(r) per prototype.
+ */
+public class NystroemClassificationModel extends PredictionModel {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Minimal number of examples scored by one task
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+    /**
+     * Chunks per thread, more chunks even out differences of the threads
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final NystroemEmbedding embedding;
+    private final double[][] prototypes; //Coordinates of every prototype in the embedding
+    private final double[] prototypeLabels;
+
+    /**
+     * @param trainingSet - training ExampleSet, its regular attributes are the landmarks
+     * @param embedding - embedding of the landmarks
+     * @param prototypes - optimized coordinates of the prototypes
+     * @param prototypeLabels - label of every prototype
+     */
+    public NystroemClassificationModel(ExampleSet trainingSet, NystroemEmbedding embedding, double[][] prototypes, double[] prototypeLabels) {
+        super(trainingSet, ExampleSetUtilities.SetsCompareOption.EQUAL, ExampleSetUtilities.TypesCompareOption.EQUAL);
+        this.embedding = embedding;
+        this.prototypes = prototypes;
+        this.prototypeLabels = prototypeLabels;
+    }
+
+    @Override
+    public ExampleSet performPrediction(final ExampleSet exampleSet, Attribute predictedLabel) throws OperatorException {
+
+        //attributes holding the dissimilarities to the landmarks
+        Attribute[] headerAttributes = getTrainingHeader().getAttributes().createRegularAttributeArray();
+        final Attribute[] landmarkAttributes = new Attribute[headerAttributes.length];
+        for (int l = 0; l < headerAttributes.length; l++) {
+            landmarkAttributes[l] = exampleSet.getAttributes().get(headerAttributes[l].getName());
+        }
+
+        //score in parallel chunks into a primitive array, the example set is only read by the tasks
+        final double[] predictions = new double[exampleSet.size()];
+        TaskExecutor executor = getOperator() == null ? SequentialTaskExecutor.INSTANCE
+                : new ConcurrencyContextTaskExecutor(Resources.getConcurrencyContext(getOperator()), 0);
+        int chunks = Math.max(1, Math.min(executor.getParallelism() * CHUNKS_PER_THREAD, predictions.length / MIN_CHUNK_SIZE));
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final int from = (int) ((long) predictions.length * c / chunks);
+            final int to = (int) ((long) predictions.length * (c + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    double[] squaredDissimilarities = new double[landmarkAttributes.length];
+                    double[] coordinates = new double[embedding.getDimension()];
+                    for (int e = from; e < to; e++) {
+                        Example example = exampleSet.getExample(e);
+                        for (int l = 0; l < landmarkAttributes.length; l++) {
+                            double value = example.getValue(landmarkAttributes[l]);
+                            squaredDissimilarities[l] = value * value;
+                        }
+                        embedding.embed(squaredDissimilarities, coordinates);
+                        predictions[e] = predict(coordinates);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            executor.call(tasks);
+        } catch (ExecutionException e) {
+            throw new OperatorException("Scoring with the RGLVQ landmark model failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        int e = 0;
+        for (Example example : exampleSet) {
+            example.setValue(predictedLabel, predictions[e++]);
+        }
+        return exampleSet;
+    }
+
+    /**
+     * @param coordinates - embedded example
+     * @return - label of the closest prototype
+     */
+    double predict(double[] coordinates) {
+        int minIndex = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < prototypes.length; i++) {
+            double distance = embedding.distance(coordinates, prototypes[i]);
+            if (distance < minDistance) {
+                minIndex = i;
+                minDistance = distance;
+            }
+        }
+        return prototypeLabels[minIndex];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        description.append(super.toString());
+        description.append("\n\nClassification is based on Nearest Prototype Classification in the pseudo-Euclidean embedding of ");
+        description.append(embedding.getNumberOfLandmarks()).append(" landmarks (").append(embedding.getDimension()).append(" dimensions).\n \n");
+        Attribute label = getTrainingHeader().getAttributes().getLabel();
+        for (int i = 0; i < prototypes.length; i++) {
+            description.append("Prototype " + (i + 1) + ":      ");
+            description.append("Label = " + (label == null ? "label" : label.getName()) + ": " + prototypeLabels[i] + "; ");
+            for (int k = 0; k < prototypes[i].length; k++) {
+                description.append("dimension " + (k + 1) + ": " + prototypes[i][k] + "; ");
+            }
+            description.append("\n");
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+import java.io.Serializable;
+
+/**
+ * Pseudo-Euclidean embedding of relational data from the dissimilarities to m landmark points
+ * (Nyström approximation / landmark MDS). The double-centered squared dissimilarities of the
+ * landmarks S = -1/2 * J W J are decomposed into U Λ Uᵀ; an item with the squared dissimilarities
+ * δ to the landmarks gets the coordinates y_k = -1/2 * sign(λ_k) / sqrt(|λ_k|) * u_kᵀ (δ - μ),
+ * where μ are the mean squared dissimilarities of the landmarks. Distances in the embedding are
+ * Σ_k sign(λ_k) (a_k - b_k)², so negative eigenvalues of non-Euclidean data are kept.
+ * <p>
+ * Memory is O(r·m) for r ≤ m kept eigenvalues, embedding an item takes O(r·m).
+ */
+public class NystroemEmbedding implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Eigenvalues with an absolute value below this fraction of the largest one are dropped
+     */
+    private static final double EIGENVALUE_TOLERANCE = 1E-10;
+
+    private final double[][] projection; //-1/2 * sign(λ_k) / sqrt(|λ_k|) * u_k for every kept eigenvalue
+    private final double[] landmarkMeans; //μ, mean squared dissimilarity of every landmark
+    private final double[] signature; //sign(λ_k) for every kept eigenvalue
+
+    private NystroemEmbedding(double[][] projection, double[] landmarkMeans, double[] signature) {
+        this.projection = projection;
+        this.landmarkMeans = landmarkMeans;
+        this.signature = signature;
+    }
+
+    /**
+     * Computes the embedding from the squared dissimilarities between the landmarks.
+     *
+     * @param squaredLandmarkDissimilarities - symmetric m x m squared dissimilarities with zero diagonal
+     * @return - embedding into at most m - 1 dimensions
+     */
+    public static NystroemEmbedding fromLandmarks(double[][] squaredLandmarkDissimilarities) {
+        int m = squaredLandmarkDissimilarities.length;
+        double[] means = new double[m];
+        double total = 0;
+        for (int i = 0; i < m; i++) {
+            for (int l = 0; l < m; l++) {
+                means[l] += squaredLandmarkDissimilarities[i][l] / m;
+            }
+        }
+        for (int l = 0; l < m; l++) {
+            total += means[l] / m;
+        }
+        //double centering, S = -1/2 * J W J
+        double[][] centered = new double[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int l = 0; l < m; l++) {
+                centered[i][l] = -0.5 * (squaredLandmarkDissimilarities[i][l] - means[i] - means[l] + total);
+            }
+        }
+        EigenvalueDecomposition decomposition = new Matrix(centered).eig();
+        double[] eigenvalues = decomposition.getRealEigenvalues();
+        double[][] eigenvectors = decomposition.getV().getArray();
+        double largest = 0;
+        for (double eigenvalue : eigenvalues) {
+            largest = Math.max(largest, Math.abs(eigenvalue));
+        }
+        int dimension = 0;
+        for (double eigenvalue : eigenvalues) {
+            if (Math.abs(eigenvalue) > EIGENVALUE_TOLERANCE * largest) {
+                dimension++;
+            }
+        }
+        double[][] projection = new double[dimension][m];
+        double[] signature = new double[dimension];
+        int k = 0;
+        for (int e = 0; e < eigenvalues.length; e++) {
+            double eigenvalue = eigenvalues[e];
+            if (Math.abs(eigenvalue) <= EIGENVALUE_TOLERANCE * largest) {
+                continue;
+            }
+            signature[k] = Math.signum(eigenvalue);
+            double scale = -0.5 * signature[k] / Math.sqrt(Math.abs(eigenvalue));
+            for (int l = 0; l < m; l++) {
+                projection[k][l] = scale * eigenvectors[l][e];
+            }
+            k++;
+        }
+        return new NystroemEmbedding(projection, means, signature);
+    }
+
+    /**
+     * @return - number of dimensions r of the embedding
+     */
+    public int getDimension() {
+        return signature.length;
+    }
+
+    /**
+     * @return - number of landmarks m
+     */
+    public int getNumberOfLandmarks() {
+        return landmarkMeans.length;
+    }
+
+    /**
+     * Computes the coordinates of an item.
+     *
+     * @param squaredDissimilarities - squared dissimilarities of the item to the landmarks
+     * @param coordinates - target array with {@link #getDimension()} entries
+     */
+    public void embed(double[] squaredDissimilarities, double[] coordinates) {
+        for (int k = 0; k < projection.length; k++) {
+            double[] direction = projection[k];
+            double sum = 0;
+            for (int l = 0; l < direction.length; l++) {
+                sum += direction[l] * (squaredDissimilarities[l] - landmarkMeans[l]);
+            }
+            coordinates[k] = sum;
+        }
+    }
+
+    /**
+     * Squared pseudo-Euclidean distance Σ_k sign(λ_k) (a_k - b_k)² between two embedded items.
+     */
+    public double distance(double[] a, double[] b) {
+        double distance = 0;
+        for (int k = 0; k < signature.length; k++) {
+            double difference = a[k] - b[k];
+            distance += signature[k] * difference * difference;
+        }
+        return distance;
+    }
+
+    /**
+     * @return - sign(λ_k) of every dimension, 1 for Euclidean and -1 for the negative part
+     */
+    public double[] getSignature() {
+        return signature;
+    }
+}
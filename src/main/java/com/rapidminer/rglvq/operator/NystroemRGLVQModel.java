@@ -0,0 +1,201 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.ProcessStoppedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GLVQ in the pseudo-Euclidean space of a {@link NystroemEmbedding}. The prototypes are vectors in
+ * the embedding, so an update costs O(r) with r ≤ m instead of O(N) for relational prototypes,
+ * and the training needs the N x r coordinates only.
+ * <p>
+ * For the distances d = Σ_k sign(λ_k) (y_k - w_k)² the gradient step moves a prototype by
+ * sign(λ) ⊙ (y - w), i.e. towards the example in the positive and away from it in the negative
+ * dimensions. The cost of an example is the sigmoid of μ = (d⁺ - d⁻) / (d⁺ + d⁻).
+ */
+public class NystroemRGLVQModel {
+
+    private final NystroemEmbedding embedding;
+    private final int iterations; //Total number of iterations
+    private double alpha; //Learning rate
+    private final double[][] prototypes; //Coordinates of every prototype
+    private final double[] prototypeLabels;
+    private double costValue; //Summed sigmoid cost of the current epoch
+    private final List<Double> costValues; //Mean sigmoid cost of every epoch
+    private final TrainingTelemetry telemetry = new TrainingTelemetry(); //Counters of every epoch
+    private double costTolerance; //Change of the cost per epoch relative to max(|cost|, 1) below which the training stops, 0 disables
+    private Operator operator; //Operator whose stop requests end the training, null without one
+
+    /**
+     * @param embedding - embedding of the training points
+     * @param iterations - number of epochs
+     * @param alpha - initial learning rate, decays with alpha / (1 + alpha) after every epoch
+     * @param prototypes - initial coordinates of the prototypes, changed by the training
+     * @param prototypeLabels - label of every prototype
+     */
+    public NystroemRGLVQModel(NystroemEmbedding embedding, int iterations, double alpha, double[][] prototypes, double[] prototypeLabels) {
+        this.embedding = embedding;
+        this.iterations = iterations;
+        this.alpha = alpha;
+        this.prototypes = prototypes;
+        this.prototypeLabels = prototypeLabels;
+        this.costValues = new ArrayList<>(iterations);
+    }
+
+    /**
+     * @param costTolerance - change of the cost between two epochs, relative to max(|cost|, 1), below which the training stops, 0 disables
+     */
+    public void setCostTolerance(double costTolerance) {
+        this.costTolerance = costTolerance;
+    }
+
+    /**
+     * @param operator - operator whose stop requests are checked once per epoch, null to train without stop checks
+     */
+    public void setOperator(Operator operator) {
+        this.operator = operator;
+    }
+
+    /**
+     * Picks random training points of every class as initial prototypes.
+     *
+     * @param coordinates - embedded training points
+     * @param labels - label of every training point
+     * @param prototypeLabels - label of every prototype
+     * @param random - random generator
+     * @return - initial coordinates of the prototypes
+     */
+    public static double[][] initialPrototypes(double[][] coordinates, double[] labels, double[] prototypeLabels, Random random) {
+        double[][] prototypes = new double[prototypeLabels.length][];
+        for (int j = 0; j < prototypes.length; j++) {
+            int row;
+            do {
+                row = random.nextInt(coordinates.length);
+            } while (labels[row] != prototypeLabels[j]);
+            prototypes[j] = coordinates[row].clone();
+        }
+        return prototypes;
+    }
+
+    /**
+     * Runs the epochs over the training points in their order until the maximal number of epochs or
+     * the cost tolerance is reached.
+     *
+     * @param coordinates - embedded training points
+     * @param labels - label of every training point
+     * @return - optimized coordinates of the prototypes
+     * @throws ProcessStoppedException - if the process of the operator was stopped
+     */
+    public double[][] run(double[][] coordinates, double[] labels) throws ProcessStoppedException {
+        long memory = (long) coordinates.length * embedding.getDimension() * Double.BYTES;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            if (operator != null) {
+                operator.checkForStop();
+            }
+            telemetry.startEpoch(0, 0);
+            costValue = 0;
+            for (int i = 0; i < coordinates.length; i++) {
+                update(coordinates[i], labels[i]);
+                telemetry.countDistances(prototypes.length);
+                telemetry.countUpdates(1);
+            }
+            telemetry.endEpoch(-1, 0, 0, memory);
+            alpha = alpha / (1 + alpha);
+            costValues.add(costValue / coordinates.length);
+            if (AbstractModel.isCostConverged(costValues, costTolerance)) {
+                break;
+            }
+        }
+        return prototypes;
+    }
+
+    /**
+     * Moves the closest prototype with the label of the example towards it and the closest one with
+     * another label away from it.
+     */
+    private void update(double[] example, double label) {
+        double closestCorrect = Double.MAX_VALUE;
+        double closestIncorrect = Double.MAX_VALUE;
+        int correct = -1;
+        int incorrect = -1;
+        for (int j = 0; j < prototypes.length; j++) {
+            double distance = embedding.distance(example, prototypes[j]);
+            if (prototypeLabels[j] == label) {
+                if (distance < closestCorrect) {
+                    closestCorrect = distance;
+                    correct = j;
+                }
+            } else if (distance < closestIncorrect) {
+                closestIncorrect = distance;
+                incorrect = j;
+            }
+        }
+        if (correct < 0 || incorrect < 0) {
+            return;
+        }
+        double denominator = closestCorrect + closestIncorrect + 1E-5;
+        denominator = denominator == 0 ? 1e-10 : denominator;
+        double mu = (closestCorrect - closestIncorrect) / denominator;
+        double sigmoid = 1 / (1 + Math.exp(-mu));
+        costValue += sigmoid;
+        double slope = sigmoid * (1 - sigmoid);
+        //∂μ/∂d+ = (1 - μ) / denominator, ∂μ/∂d- = -(1 + μ) / denominator, ∂d/∂w = -2 sign(λ) ⊙ (y - w)
+        double correctFactor = 2 * alpha * slope * (1 - mu) / denominator;
+        double incorrectFactor = 2 * alpha * slope * (1 + mu) / denominator;
+        double[] signature = embedding.getSignature();
+        double[] correctPrototype = prototypes[correct];
+        double[] incorrectPrototype = prototypes[incorrect];
+        for (int k = 0; k < signature.length; k++) {
+            correctPrototype[k] += correctFactor * signature[k] * (example[k] - correctPrototype[k]);
+            incorrectPrototype[k] -= incorrectFactor * signature[k] * (example[k] - incorrectPrototype[k]);
+        }
+    }
+
+    /**
+     * @return - mean sigmoid cost of the training points in the last epoch, -1 before the first epoch
+     */
+    public double getCostFunctionValue() {
+        if (costValues.size() > 0)
+            return costValues.get(costValues.size() - 1);
+        return -1;
+    }
+
+    /**
+     * @return - counters of every epoch, the memory is the one of the embedded training points
+     */
+    public TrainingTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @return - mean sigmoid cost of every epoch, accumulated while the epoch updates the prototypes
+     */
+    public List<Double> getCostFunctionValues() {
+        return costValues;
+    }
+}
@@ -23,97 +23,315 @@
 package com.rapidminer.rglvq.operator;
 
 import com.rapidminer.example.Attribute;
-import com.rapidminer.example.Attributes;
 import com.rapidminer.example.Example;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.example.set.ExampleSetUtilities;
 import com.rapidminer.operator.OperatorException;
 import com.rapidminer.operator.learner.PredictionModel;
-import com.rapidminer.tools.LogService;
-import com.rapidminer.tools.math.similarity.DistanceMeasure;
-
+import com.rapidminer.rglvq.concurrency.ConcurrencyContextTaskExecutor;
+import com.rapidminer.rglvq.concurrency.SequentialTaskExecutor;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.monitoring.TrainingProbes;
+import com.rapidminer.studio.internal.Resources;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.logging.Level;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 
 public class RGLVQClassificationModel<T extends Serializable> extends PredictionModel {
 
 
-    private boolean debugMode = false;
-    private static final long serialVersionUID = 1L;
-    private ExampleSet prototypes;
-    private double[][] squaredDissMatrix;
-    DissimilarityMeasure measure;
+    /**
+     * Minimal number of examples scored by one task
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+    /**
+     * Chunks per thread, more chunks even out differences of the threads
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Version of the serialized form written by {@link #writeObject(ObjectOutputStream)}
+     */
+    private static final int SERIAL_FORMAT_VERSION = 1;
+
+    private static final long serialVersionUID = 2L;
+    //only needed to compile the model, neither the prototypes nor the N x N matrix are serialized
+    private transient ExampleSet prototypes;
+    private transient int[] columnIndices; //Position of the attribute belonging to every matrix row
+    //prototypes compiled once: non-zero coefficients over the matrix rows, self-terms and labels
+    private transient int[][] prototypeSupports;
+    private transient double[][] prototypeCoefficients;
+    private transient double[] prototypeSelfTerms; //z_j = -1/2 * α_j * Dα_j
+    private transient double[] prototypeLabels;
+    transient int[] usedRows; //Ascending matrix rows with a non-zero coefficient in any prototype
 
 
     //private double sigma;
 
-    protected RGLVQClassificationModel(ExampleSet prototypes, ExampleSet trainingSet, double[][] dissimilarityMatrix ) {//
+    /**
+     * @param prototypes - optimized prototypes, dense over the attributes of the training set
+     * @param trainingSet - training ExampleSet
+     * @param dissimilarityMatrix - squared dissimilarities between the training points, only used to compile the model
+     * @param columnIndices - position of the attribute belonging to every matrix row
+     * @param coefficientCutoff - coefficients below this fraction of the largest coefficient of their prototype are dropped
+     */
+    public RGLVQClassificationModel(ExampleSet prototypes, ExampleSet trainingSet, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices, double coefficientCutoff) {//
         super(trainingSet, ExampleSetUtilities.SetsCompareOption.EQUAL, ExampleSetUtilities.TypesCompareOption.EQUAL);
         this.prototypes = prototypes;
-        this.squaredDissMatrix = dissimilarityMatrix;
-        this.measure = new DissimilarityMeasure(this.squaredDissMatrix);
+        this.columnIndices = columnIndices;
+        compilePrototypes(dissimilarityMatrix, coefficientCutoff);
     }
 
+    /**
+     * Reads the prototypes once into primitive arrays and computes their self-terms with a single pass
+     * over the matrix, so scoring an example only needs its dissimilarities to the support points.
+     * Coefficients below the cutoff are dropped and the rest renormalized to a sum of 1, the self-terms
+     * belong to the truncated prototypes.
+     */
+    private void compilePrototypes(SquaredDissimilarityMatrix squaredDissMatrix, double coefficientCutoff) {
+        Attribute[] prototypeAttributes = prototypes.getAttributes().createRegularAttributeArray();
+        int numberOfPrototypes = prototypes.size();
+        prototypeSupports = new int[numberOfPrototypes][];
+        prototypeCoefficients = new double[numberOfPrototypes][];
+        prototypeLabels = new double[numberOfPrototypes];
+        boolean[] used = new boolean[columnIndices.length];
+        double[] denseValues = new double[columnIndices.length];
+        int i = 0;
+        for (Example p : prototypes) {
+            double max = 0;
+            for (int j = 0; j < columnIndices.length; j++) {
+                denseValues[j] = p.getValue(prototypeAttributes[columnIndices[j]]);
+                max = Math.max(max, denseValues[j]);
+            }
+            double threshold = Math.max(max * coefficientCutoff, Double.MIN_VALUE);
+            int nonZero = 0;
+            double sum = 0;
+            for (int j = 0; j < columnIndices.length; j++) {
+                if (denseValues[j] >= threshold) {
+                    nonZero++;
+                    sum += denseValues[j];
+                }
+            }
+            prototypeSupports[i] = new int[nonZero];
+            prototypeCoefficients[i] = new double[nonZero];
+            int k = 0;
+            for (int j = 0; j < columnIndices.length; j++) {
+                if (denseValues[j] >= threshold) {
+                    prototypeSupports[i][k] = j;
+                    prototypeCoefficients[i][k] = denseValues[j] / sum;
+                    used[j] = true;
+                    k++;
+                }
+            }
+            prototypeLabels[i] = p.getLabel();
+            i++;
+        }
+        usedRows = usedRows(used);
 
+        //self-terms of all prototypes with a single pass over the matrix
+        DissimilarityMeasure measure = new DissimilarityMeasure(squaredDissMatrix);
+        int[] selection = new int[numberOfPrototypes];
+        for (i = 0; i < numberOfPrototypes; i++) {
+            selection[i] = i;
+        }
+        double[][] matrixVectors = new double[numberOfPrototypes][squaredDissMatrix.size()];
+        measure.projectAll(prototypeSupports, prototypeCoefficients, selection, matrixVectors);
+        prototypeSelfTerms = new double[numberOfPrototypes];
+        for (i = 0; i < numberOfPrototypes; i++) {
+            prototypeSelfTerms[i] = measure.selfTerm(prototypeSupports[i], prototypeCoefficients[i], matrixVectors[i]);
+        }
+    }
 
 
-    @Override
-    public ExampleSet performPrediction(ExampleSet exampleSet, Attribute predictedLabel) throws OperatorException {
-
-        //DissimilarityMeasure measure = new DissimilarityMeasure(dissimilarityMatrix);
-        double distance = 0;
-        for (Example example : exampleSet) {
-            double[][] labelDistances = new double[prototypes.size()][2];
-            double[] exampleValues = new double[example.getAttributes().size()];
-
-            //cache predictionSet values into array
-            int i = 0;
-            for (Attribute a : example.getAttributes()) {
-                exampleValues[i] = example.getValue(a);
-                i++;
+    /**
+     * @param used - whether a matrix row has a coefficient in any prototype
+     * @return - ascending used rows
+     */
+    private static int[] usedRows(boolean[] used) {
+        int numberOfUsedRows = 0;
+        for (boolean u : used) {
+            if (u) {
+                numberOfUsedRows++;
             }
-            //cache optimized prototype values into array
-            i = 0;
-            //DissimilarityMeasure dissimilarity = new DissimilarityMeasure(dissimilarityMatrix);
-            for (Example p : prototypes) {
-                double[] optPrototypes = new double[p.getAttributes().size()];
-                int j = 0;
-                for (Attribute a : p.getAttributes()) {
-                    optPrototypes[j] = p.getValue(a);
-                    j++;
-                }
-                labelDistances[i][0] = measure.calculateDistance(optPrototypes, exampleValues);//dissimilarityMatrix
-                labelDistances[i][1] = p.getLabel();
-                i++;
+        }
+        int[] rows = new int[numberOfUsedRows];
+        int k = 0;
+        for (int j = 0; j < used.length; j++) {
+            if (used[j]) {
+                rows[k++] = j;
             }
-            int minIndex = 0;
-            double minDistance = Double.MAX_VALUE;
-            i = 0;
-            for (double[] dist : labelDistances) {
-                if (dist[0] < minDistance) {
-                    minIndex = i;
-                    minDistance = dist[0];
-                }
-                i++;
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the compiled prototypes only: a version tag, the attribute position of every matrix row
+     * and per prototype its label, self-term and sparse coefficients.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(SERIAL_FORMAT_VERSION);
+        out.writeInt(columnIndices.length);
+        for (int columnIndex : columnIndices) {
+            out.writeInt(columnIndex);
+        }
+        out.writeInt(prototypeLabels.length);
+        for (int i = 0; i < prototypeLabels.length; i++) {
+            out.writeDouble(prototypeLabels[i]);
+            out.writeDouble(prototypeSelfTerms[i]);
+            out.writeInt(prototypeSupports[i].length);
+            for (int k = 0; k < prototypeSupports[i].length; k++) {
+                out.writeInt(prototypeSupports[i][k]);
+                out.writeDouble(prototypeCoefficients[i][k]);
             }
-            HashMap<Double, Double> maxDistancePerClass = new HashMap<Double, Double>();
-            for (double[] dis : labelDistances) {
-                maxDistancePerClass.put(dis[1], dis[0]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readInt();
+        if (version != SERIAL_FORMAT_VERSION) {
+            throw new InvalidObjectException("Unsupported RGLVQ model format version " + version);
+        }
+        columnIndices = new int[in.readInt()];
+        for (int j = 0; j < columnIndices.length; j++) {
+            columnIndices[j] = in.readInt();
+        }
+        int numberOfPrototypes = in.readInt();
+        prototypeLabels = new double[numberOfPrototypes];
+        prototypeSelfTerms = new double[numberOfPrototypes];
+        prototypeSupports = new int[numberOfPrototypes][];
+        prototypeCoefficients = new double[numberOfPrototypes][];
+        boolean[] used = new boolean[columnIndices.length];
+        for (int i = 0; i < numberOfPrototypes; i++) {
+            prototypeLabels[i] = in.readDouble();
+            prototypeSelfTerms[i] = in.readDouble();
+            int nonZero = in.readInt();
+            prototypeSupports[i] = new int[nonZero];
+            prototypeCoefficients[i] = new double[nonZero];
+            for (int k = 0; k < nonZero; k++) {
+                prototypeSupports[i][k] = in.readInt();
+                prototypeCoefficients[i][k] = in.readDouble();
+                used[prototypeSupports[i][k]] = true;
             }
-            for (double[] dis : labelDistances) {
-                if (maxDistancePerClass.get(dis[1]) > dis[0]) {
-                    maxDistancePerClass.put(dis[1], dis[0]);
+        }
+        usedRows = usedRows(used);
+    }
+
+    @Override
+    public ExampleSet performPrediction(final ExampleSet exampleSet, Attribute predictedLabel) throws OperatorException {
+
+        final Attribute[] exampleAttributes = getExampleAttributes(exampleSet);
+
+        //score in parallel chunks into a primitive array, the example set is only read by the tasks
+        final double[] predictions = new double[exampleSet.size()];
+        TaskExecutor executor = getOperator() == null ? SequentialTaskExecutor.INSTANCE
+                : new ConcurrencyContextTaskExecutor(Resources.getConcurrencyContext(getOperator()), 0);
+        int chunks = Math.max(1, Math.min(executor.getParallelism() * CHUNKS_PER_THREAD, predictions.length / MIN_CHUNK_SIZE));
+        final int coefficients = getNumberOfCoefficients();
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final int from = (int) ((long) predictions.length * c / chunks);
+            final int to = (int) ((long) predictions.length * (c + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    Object predictionEvent = TrainingProbes.PROBE.beginPrediction();
+                    double[] exampleValues = new double[columnIndices.length];
+                    for (int e = from; e < to; e++) {
+                        predictions[e] = predict(exampleSet.getExample(e), exampleAttributes, exampleValues);
+                    }
+                    TrainingProbes.PROBE.endPrediction(predictionEvent, to - from, prototypeLabels.length, coefficients);
+                    return null;
                 }
-            }
+            });
+        }
+        try {
+            executor.call(tasks);
+        } catch (ExecutionException e) {
+            throw new OperatorException("Scoring with the RGLVQ model failed: " + e.getCause().getMessage(), e.getCause());
+        }
 
-            example.setValue(predictedLabel, labelDistances[minIndex][1]);
+        int e = 0;
+        for (Example example : exampleSet) {
+            example.setValue(predictedLabel, predictions[e++]);
         }
         return exampleSet;
     }
 
+    /**
+     * Finds the attributes the values of an example are read from.
+     * @param exampleSet - example set to score
+     * @return - attribute holding the dissimilarity to the training point of every matrix row, set for the used rows
+     */
+    protected Attribute[] getExampleAttributes(ExampleSet exampleSet) {
+        Attribute[] headerAttributes = getTrainingHeader().getAttributes().createRegularAttributeArray();
+        Attribute[] exampleAttributes = new Attribute[columnIndices.length];
+        for (int k : usedRows) {
+            exampleAttributes[k] = exampleSet.getAttributes().get(headerAttributes[columnIndices[k]].getName());
+        }
+        return exampleAttributes;
+    }
+
+    /**
+     * Reads the squared dissimilarities of an example to the training points of the used rows.
+     * @param example - example to score
+     * @param exampleAttributes - attributes from {@link #getExampleAttributes(ExampleSet)}
+     * @param exampleValues - target with one entry per matrix row, only the used rows are set
+     */
+    protected void readExampleValues(Example example, Attribute[] exampleAttributes, double[] exampleValues) {
+        //squared values, training uses the squared dissimilarities as well
+        for (int k : usedRows) {
+            double value = example.getValue(exampleAttributes[k]);
+            exampleValues[k] = value * value;
+        }
+    }
+
+    /**
+     * @param headerAttributes - regular attributes of the training header
+     * @param row - matrix row
+     * @return - name of the training point of the row in the model description
+     */
+    protected String getRowName(Attribute[] headerAttributes, int row) {
+        return headerAttributes[columnIndices[row]].getName();
+    }
+
+    /**
+     * Nearest prototype classification of one example, O(support) per prototype.
+     * @param example - example holding the dissimilarities to the training points
+     * @param exampleAttributes - attribute of every matrix row, set for the used rows
+     * @param exampleValues - scratch array with one entry per matrix row
+     * @return - label of the closest prototype
+     */
+    private double predict(Example example, Attribute[] exampleAttributes, double[] exampleValues) {
+        readExampleValues(example, exampleAttributes, exampleValues);
+        int minIndex = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < prototypeSupports.length; i++) {
+            int[] support = prototypeSupports[i];
+            double[] coefficients = prototypeCoefficients[i];
+            double distance = prototypeSelfTerms[i];
+            for (int k = 0; k < support.length; k++) {
+                distance += exampleValues[support[k]] * coefficients[k];
+            }
+            if (distance < minDistance) {
+                minIndex = i;
+                minDistance = distance;
+            }
+        }
+        return prototypeLabels[minIndex];
+    }
+
 
     // Erzeugt den Text, der f�r das Model in der Result Sicht angezeigt wird
     @Override
@@ -121,40 +339,28 @@ public class RGLVQClassificationModel<T extends Serializable> extends Prediction
         StringBuilder description = new StringBuilder();
         description.append(super.toString());
         description.append("\n");
-        description.append("\n" + "Classification is based on Nearest Prototype Classification. Prototypes are created using RSLVQ Algorithm.\n \n");
-        int i = 1;
-        for (Example cb : prototypes){
-            description.append("Prototype " + i + ":      ");
-            description.append("Label = " + cb.getAttributes().getLabel().getName() + ": " +cb.getLabel() + "; ");
-            for (Attribute att : prototypes.getAttributes()) {
-                description.append(att.getName() + ": " + cb.getValue(att) + "; ");
+        description.append("\n" + "Classification is based on Nearest Prototype Classification. Prototypes are created using RGLVQ Algorithm.\n \n");
+        Attribute[] headerAttributes = getTrainingHeader().getAttributes().createRegularAttributeArray();
+        Attribute label = getTrainingHeader().getAttributes().getLabel();
+        for (int i = 0; i < prototypeLabels.length; i++) {
+            description.append("Prototype " + (i + 1) + ":      ");
+            description.append("Label = " + (label == null ? "label" : label.getName()) + ": " + prototypeLabels[i] + "; ");
+            for (int k = 0; k < prototypeSupports[i].length; k++) {
+                description.append(getRowName(headerAttributes, prototypeSupports[i][k]) + ": " + prototypeCoefficients[i][k] + "; ");
             }
             description.append("\n");
-            i++;
         }
         return description.toString();
     }
 
-
-
-
-
-
-
+    /**
+     * @return - number of coefficients kept over all prototypes
+     */
+    public int getNumberOfCoefficients() {
+        int coefficients = 0;
+        for (int[] support : prototypeSupports) {
+            coefficients += support.length;
+        }
+        return coefficients;
+    }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
@@ -23,19 +23,20 @@
 package com.rapidminer.rglvq.operator;
 
 import com.rapidminer.example.Attribute;
-import com.rapidminer.example.Attributes;
 import com.rapidminer.example.Example;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.ProcessStoppedException;
+import com.rapidminer.rglvq.concurrency.TaskExecutor;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.monitoring.TrainingProbes;
 import com.rapidminer.tools.LogService;
-import com.rapidminer.tools.math.similarity.DistanceMeasure;
-import edu.uci.ics.jung.algorithms.shortestpath.Distance;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 public class RGLVQModel extends AbstractModel{
@@ -56,7 +57,12 @@ public class RGLVQModel extends AbstractModel{
     //private final LearningRateUpdateRule learningRateUpdateRule; //The update rule of the learning rate
     private int numberOfUpdates; //The number of times the update function was executed before nextIteration was executed
     private double tempFactor = 0;
-    DissimilarityMeasure measure;
+    private int batchSize = 1; //Number of examples whose steps are averaged, 1 applies every example on its own
+    private double[][][] batchDeltas; //Summed steps of every chunk of a batch, per prototype
+    private boolean[][] batchTouched; //Prototypes with steps in the deltas of every chunk
+    private final int[] winners = new int[2]; //Correct and incorrect winner of the current example
+    private int exampleIndex; //Row of the current example in the dissimilarity matrix
+    double exampleLabel; //Label of the current example
 
 
     /**
@@ -65,11 +71,24 @@ public class RGLVQModel extends AbstractModel{
      * @param prototypes
      * @param iterations
      * @param alpha
-     * @param
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the attribute belonging to every matrix row
      * @throws OperatorException
      */
-    public RGLVQModel(ExampleSet prototypes, int iterations, double alpha, double[][] dissimilarityMatrix) throws OperatorException {
-        super(prototypes);
+    public RGLVQModel(ExampleSet prototypes, int iterations, double alpha, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) throws OperatorException {
+        this(iterations, alpha, dissimilarityMatrix, columnIndices);
+        setPrototypes(prototypes);
+    }
+
+    /**
+     * Constructor of a model trained from primitive arrays with {@link #train(double[][], double[], double[])}.
+     *
+     * @param iterations - maximal number of epochs
+     * @param alpha - initial learning rate
+     * @param dissimilarityMatrix - squared dissimilarities between the training points
+     * @param columnIndices - position of the coefficient belonging to every matrix row
+     */
+    public RGLVQModel(int iterations, double alpha, SquaredDissimilarityMatrix dissimilarityMatrix, int[] columnIndices) {
         this.iterations = iterations;
         this.currentIteration = 0;
         this.alpha = alpha;
@@ -78,6 +97,7 @@ public class RGLVQModel extends AbstractModel{
         this.costValues = new ArrayList<>(iterations);
         this.debug = false;
         this.squaredDissMatrix = dissimilarityMatrix;
+        this.columnIndices = columnIndices;
         this.measure = new DissimilarityMeasure(dissimilarityMatrix);
         learningRateValues = new ArrayList<>(iterations);
         timeRateValues = new ArrayList<>(iterations);
@@ -86,87 +106,238 @@ public class RGLVQModel extends AbstractModel{
 
 
     /**
-     *
+     * Applies the RGLVQ step of the current example to its two winners.
      */
     public void update() {
+        //the coefficients are changed in place, so the step of the example is applied immediately
+        Object updateEvent = TrainingProbes.PROBE.beginUpdate();
+        int row = getCurrentExampleIndex();
+        double mu = step(row, getWinners(row, exampleLabel, winners), prototypeValues);
+        costValue += mu;
+        //only the two winners moved, refresh their cached projections with one pass over D
+        updateProjections(winners[0], winners[1]);
+        numberOfUpdates++;
+        telemetry.countDistances(getNumberOfPrototypes());
+        telemetry.countUpdates(1);
+        TrainingProbes.PROBE.endUpdate(updateEvent, row, squaredDissMatrix.size(), getNumberOfPrototypes());
+    }
+
+    /**
+     * Performs one epoch. With a batch size of 1 every example is applied on its own, otherwise the
+     * rows are split into batches whose examples are scored in parallel against the prototypes of the
+     * start of the batch. The averaged steps of a batch are applied together.
+     */
+    @Override
+    protected void trainEpoch() throws ProcessStoppedException {
+        if (batchSize <= 1) {
+            //the values of a training example are its row of the squared dissimilarity matrix,
+            //update() reads the few it needs directly from the matrix
+            for (exampleIndex = 0; exampleIndex < trainingLabels.length; exampleIndex++) {
+                exampleLabel = trainingLabels[exampleIndex];
+                update();
+            }
+            normalizePrototypes();
+        } else {
+            trainBatches();
+        }
+        //the projections are fresh after the normalization
+        costValues.add(projectedCost());
+    }
 
-        double distance;
+    /**
+     * @return - matrix row of the current example
+     */
+    protected int getCurrentExampleIndex() {
+        return exampleIndex;
+    }
+
+    /**
+     * Performs one epoch of mini-batches over strided rows.
+     */
+    private void trainBatches() throws ProcessStoppedException {
+        int size = squaredDissMatrix.size();
+        int numberOfBatches = (size + batchSize - 1) / batchSize;
+        for (int batch = 0; batch < numberOfBatches; batch++) {
+            checkForStop();
+            //every numberOfBatches-th row, so batches mix the classes of data sorted by label
+            int[] rows = new int[(size - batch + numberOfBatches - 1) / numberOfBatches];
+            for (int k = 0; k < rows.length; k++) {
+                rows[k] = batch + k * numberOfBatches;
+            }
+            trainBatch(rows);
+        }
+        normalizePrototypes();
+    }
+
+    /**
+     * Scores the rows of a batch in parallel chunks against the current prototypes and their cached
+     * projections, which stay unchanged until all chunks are done. Every chunk adds the steps of its
+     * rows to its own delta arrays, the deltas are averaged and the changed prototypes re-projected.
+     * @param rows - matrix rows of the batch
+     */
+    private void trainBatch(final int[] rows) {
+        int chunks = Math.max(1, Math.min(executor.getParallelism(), rows.length));
+        if (batchDeltas == null || batchDeltas.length < chunks) {
+            batchDeltas = new double[chunks][getNumberOfPrototypes()][];
+            batchTouched = new boolean[chunks][getNumberOfPrototypes()];
+        }
+        List<Callable<Double>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final int from = (int) ((long) rows.length * c / chunks);
+            final int to = (int) ((long) rows.length * (c + 1) / chunks);
+            final double[][] deltas = batchDeltas[c];
+            final boolean[] touched = batchTouched[c];
+            tasks.add(new Callable<Double>() {
+
+                @Override
+                public Double call() {
+                    int[] chunkWinners = new int[2];
+                    double cost = 0;
+                    for (int k = from; k < to; k++) {
+                        int row = rows[k];
+                        for (int j : getWinners(row, trainingLabels[row], chunkWinners)) {
+                            if (deltas[j] == null) {
+                                deltas[j] = new double[prototypeValues[j].length];
+                            }
+                            touched[j] = true;
+                        }
+                        cost += step(row, chunkWinners, deltas);
+                    }
+                    return cost;
+                }
+            });
+        }
+        List<Double> costs;
+        try {
+            costs = executor.call(tasks);
+        } catch (ExecutionException e) {
+            throw TaskExecutor.rethrow(e, "Parallel scoring of the batch failed");
+        }
+        for (double cost : costs) {
+            costValue += cost;
+        }
+        telemetry.countDistances((long) rows.length * getNumberOfPrototypes());
+        telemetry.countUpdates(rows.length);
+
+        //average the steps of the batch and apply them to the changed prototypes
+        int[] changed = new int[getNumberOfPrototypes()];
+        int numberOfChanged = 0;
+        for (int j = 0; j < getNumberOfPrototypes(); j++) {
+            boolean isChanged = false;
+            double[] values = prototypeValues[j];
+            for (int c = 0; c < chunks; c++) {
+                if (!batchTouched[c][j]) {
+                    continue;
+                }
+                double[] delta = batchDeltas[c][j];
+                for (int k = 0; k < values.length; k++) {
+                    values[k] += delta[k] / rows.length;
+                }
+                Arrays.fill(delta, 0);
+                batchTouched[c][j] = false;
+                isChanged = true;
+            }
+            if (isChanged) {
+                changed[numberOfChanged++] = j;
+            }
+        }
+        updateProjections(Arrays.copyOf(changed, numberOfChanged));
+        numberOfUpdates += rows.length;
+    }
+
+    /**
+     * Finds the closest prototype with the label of a training row and the closest one with another
+     * label, using the cached projections.
+     * @param row - matrix row of the training example
+     * @param label - label of the training example
+     * @param winners - target array: row of the correct and of the incorrect winner
+     * @return - the target array
+     */
+    private int[] getWinners(int row, double label, int[] winners) {
         double closestCorrect = Double.MAX_VALUE;
         double closestIncorrect = Double.MAX_VALUE;
-        int rowCorrectPrototypes = 0;
-        int rowIncorrectPrototypes = 0;
-        int i = 0;
-
-        for (double[] prototype : prototypeValues) {
-            distance = measure.calculateDistance(prototype, exampleValues);
-            //LogService.getRoot().log(Level.INFO, "Ducanh:distance: " + distance);
+        winners[0] = 0;
+        winners[1] = 0;
+        for (int i = 0; i < getNumberOfPrototypes(); i++) {
+            //lookup of (Dα_j)_i + z_j instead of recomputing D·α_j for every example
+            double distance = prototypeProjections[i][row] + prototypeSelfTerms[i];
             double protoLabel = prototypeLabels[i];
 
-            if (distance < closestCorrect && exampleLabel == protoLabel) {
+            if (distance < closestCorrect && label == protoLabel) {
                 closestCorrect = distance;
-                rowCorrectPrototypes = i;
+                winners[0] = i;
             }
-            if (distance < closestIncorrect && exampleLabel != protoLabel) {
+            if (distance < closestIncorrect && label != protoLabel) {
                 closestIncorrect = distance;
-                rowIncorrectPrototypes = i;
+                winners[1] = i;
             }
-            i++;
         }
+        return winners;
+    }
+
+    /**
+     * Computes the RGLVQ step of a training example from the current coefficients and cached
+     * projections and adds it to the target coefficients of both winners. If the target are the
+     * coefficients themselves, this is the online update.
+     * @param row - matrix row of the training example
+     * @param winners - rows of the correct and the incorrect winner, see {@link #getWinners(int, double, int[])}
+     * @param target - coefficients the step is added to, indexed like the prototypes
+     * @return - relative distance difference μ of the example
+     */
+    private double step(int row, int[] winners, double[][] target) {
+        int rowCorrectPrototypes = winners[0];
+        int rowIncorrectPrototypes = winners[1];
+        double closestCorrect = prototypeProjections[rowCorrectPrototypes][row] + prototypeSelfTerms[rowCorrectPrototypes];
+        double closestIncorrect = prototypeProjections[rowIncorrectPrototypes][row] + prototypeSelfTerms[rowIncorrectPrototypes];
 
         double denominator = closestCorrect + closestIncorrect + 1E-5;
-        //LogService.getRoot().log(Level.INFO, "Ducanh:denominator: " + denominator);
         denominator = denominator == 0 ? 1e-10 : denominator;
         double mu = (closestCorrect - closestIncorrect) / denominator;
-        //LogService.getRoot().log(Level.INFO, "Ducanh:closestCorrect " + closestCorrect);
-        //LogService.getRoot().log(Level.INFO, "Ducanh:closestInCorrect " + closestIncorrect);
-        //LogService.getRoot().log(Level.INFO, "Ducanh:mu " + mu);
-        double currentCostValue = mu;
-        costValue += currentCostValue;
-        double muSigmoid = currentCostValue * (1 - currentCostValue);
-        //LogService.getRoot().log(Level.INFO, "Ducanh:muSigmoud " + muSigmoid);
+        double muSigmoid = mu * (1 - mu);
         double muCorrect =   closestIncorrect / (denominator * denominator);
         double muIncorrect = closestCorrect / (denominator * denominator);
-        //tempFactor += 2 * alpha * muSigmoid * muCorrect;
-        //LogService.getRoot().log(Level.INFO, "Ducanh:muCorrect " + muCorrect);
-        //LogService.getRoot().log(Level.INFO, "Ducanh:muIncorrect " + muIncorrect);
-        double[] matrixVectorCorrect = new double[squaredDissMatrix[0].length];
-        double[] matrixVectorIncorrect = new double[squaredDissMatrix[0].length];
-        int l = 0;
-
-        for (int j = 0; j < squaredDissMatrix.length; j++) {
-            for (int k = 0; k < squaredDissMatrix[0].length; k++) {
-                matrixVectorCorrect[l] += squaredDissMatrix[j][k] * prototypeValues[rowCorrectPrototypes][k];
-                matrixVectorIncorrect[l] += squaredDissMatrix[j][k] * prototypeValues[rowIncorrectPrototypes][k];
-                //LogService.getRoot().log(Level.INFO, "Ducanh:matrixVectorCorrect " + matrixVectorCorrect[l]);
-                //LogService.getRoot().log(Level.INFO, "Ducanh:matrixVectorIncorrect " + matrixVectorIncorrect[l]);
-            }
-            l++;
+        //D·α of both winners before the update, taken from the projection cache
+        double[] matrixVectorCorrect = prototypeProjections[rowCorrectPrototypes];
+        double[] matrixVectorIncorrect = prototypeProjections[rowIncorrectPrototypes];
+
+        //the coefficients of a prototype only live on the training points of its own class
+        double[] correctValues = prototypeValues[rowCorrectPrototypes];
+        double[] correctTarget = target[rowCorrectPrototypes];
+        int[] correctSupport = prototypeSupports[rowCorrectPrototypes];
+        double correctFactor = 2 * alpha * muSigmoid * muCorrect;
+        for (int i = 0; i < correctSupport.length; i++) {
+            int column = correctSupport[i];
+            correctTarget[i] += correctFactor * ( (squaredDissMatrix.get(row, column) - matrixVectorCorrect[column]) - correctValues[i] );
         }
+        double[] incorrectValues = prototypeValues[rowIncorrectPrototypes];
+        double[] incorrectTarget = target[rowIncorrectPrototypes];
+        int[] incorrectSupport = prototypeSupports[rowIncorrectPrototypes];
+        double incorrectFactor = 2 * alpha * muSigmoid * muIncorrect;
+        for (int i = 0; i < incorrectSupport.length; i++) {
+            int column = incorrectSupport[i];
+            incorrectTarget[i] -= incorrectFactor * ( (squaredDissMatrix.get(row, column) - matrixVectorIncorrect[column]) - incorrectValues[i]);
+        }
+        return mu;
+    }
 
-        for (i = 0; i < getAttributesSize(); i++) {
-            double trainValue = exampleValues[i];
-            double valueCorrect = prototypeValues[rowCorrectPrototypes][i];
-            double valueIncorrect = prototypeValues[rowIncorrectPrototypes][i];
-            valueCorrect += 2 * alpha * muSigmoid  * muCorrect * ( (trainValue - matrixVectorCorrect[i]) - valueCorrect );
-            valueIncorrect -= 2 * alpha * muSigmoid * muIncorrect * ( (trainValue - matrixVectorIncorrect[i]) - valueIncorrect);
-            //LogService.getRoot().log(Level.INFO, "Ducanh:matrixVectorCorrect2 " + matrixVectorCorrect[i]);
-            //LogService.getRoot().log(Level.INFO, "Ducanh:matrixVectorIncorrect2 " + matrixVectorIncorrect[i]);
-            prototypeValues[rowCorrectPrototypes][i] = valueCorrect;
-            prototypeValues[rowIncorrectPrototypes][i] = valueIncorrect;
-            //LogService.getRoot().log(Level.INFO, "Ducanh:valueCorrect: " + valueCorrect);
-            //LogService.getRoot().log(Level.INFO, "Ducanh:valueInCorrect: " + valueIncorrect);
+    /**
+     * Sets the number of examples scored against the same prototypes before their averaged steps are applied.
+     * @param batchSize - examples per batch, 1 for online updates after every example
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
 
-        }
-        numberOfUpdates++;
-        LogService.getRoot().log(Level.INFO, "Ducanh:numberOfUpdates " + numberOfUpdates);
+    @Override
+    protected int getBatchSize() {
+        return Math.max(1, batchSize);
     }
 
     /**
      * Returns true if the algorithm should perform the next iteration step
-     * @param trainingSet - training ExampleSet
      * @return - wether the next Iteration should be processed or not
      */
-    public boolean nextIteration(ExampleSet trainingSet) {
+    public boolean nextIteration() {
         currentIteration++;
         //LogService.getRoot().log(Level.INFO, "Ducanh: CurrentIteration " + currentIteration);
         //if (debug) {
@@ -176,6 +347,11 @@ public class RGLVQModel extends AbstractModel{
         numberOfUpdates = 0;
         alpha = alpha / (1 + alpha);
 
+        if (isCostConverged(costValues) || isWinnerConverged()) {
+            LogService.getRoot().log(Level.FINE, "RGLVQ converged after " + currentIteration + " epochs: cost " + getCostFunctionValue()
+                    + ", winner change rate " + winnerChangeRate);
+            return false;
+        }
         return currentIteration < iterations;
 
     }
@@ -22,11 +22,15 @@
  */
 package com.rapidminer.rglvq.operator;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import com.rapidminer.example.Attribute;
 import com.rapidminer.example.Attributes;
@@ -39,24 +43,47 @@ import com.rapidminer.operator.Operator;
 import com.rapidminer.operator.OperatorCapability;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.UserError;
 import com.rapidminer.operator.learner.CapabilityProvider;
 import com.rapidminer.operator.learner.PredictionModel;
 import com.rapidminer.operator.ports.InputPort;
 import com.rapidminer.operator.ports.OutputPort;
+import com.rapidminer.operator.ports.metadata.AttributeMetaData;
 import com.rapidminer.operator.ports.metadata.CapabilityPrecondition;
 import com.rapidminer.operator.ports.metadata.ExampleSetMetaData;
 import com.rapidminer.operator.ports.metadata.ExampleSetPrecondition;
-import com.rapidminer.operator.ports.metadata.GeneratePredictionModelTransformationRule;
 import com.rapidminer.operator.ports.metadata.MDInteger;
+import com.rapidminer.operator.ports.metadata.MDTransformationRule;
 import com.rapidminer.operator.ports.metadata.MetaData;
 import com.rapidminer.operator.ports.metadata.PassThroughRule;
+import com.rapidminer.operator.ports.metadata.PredictionModelMetaData;
 import com.rapidminer.parameter.ParameterType;
 import com.rapidminer.parameter.ParameterTypeBoolean;
+import com.rapidminer.parameter.ParameterTypeCategory;
+import com.rapidminer.parameter.ParameterTypeDirectory;
 import com.rapidminer.parameter.ParameterTypeDouble;
 import com.rapidminer.parameter.ParameterTypeInt;
 import com.rapidminer.parameter.UndefinedParameterError;
+import com.rapidminer.parameter.conditions.EqualTypeCondition;
+import com.rapidminer.rglvq.concurrency.ConcurrencyContextTaskExecutor;
+import com.rapidminer.rglvq.engine.RGLVQEngine;
+import com.rapidminer.rglvq.engine.TrainedPrototypes;
+import com.rapidminer.rglvq.ioobjects.DissimilarityMatrixIOObject;
+import com.rapidminer.rglvq.matrix.MappedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedFloatSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedQuantizedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.SparseSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.SquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.WritableSquaredDissimilarityMatrix;
+import com.rapidminer.studio.internal.Resources;
 import com.rapidminer.tools.LogService;
+import com.rapidminer.tools.Ontology;
 import com.rapidminer.tools.RandomGenerator;
+import com.rapidminer.tools.Tools;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+import com.rapidminer.tools.math.similarity.DistanceMeasures;
+import metadata.ParameterCategoryPrecondition;
 
 public class RGLVQOperator extends Operator implements CapabilityProvider {
 
@@ -67,12 +94,14 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
 
     private InputPort exampleSetInputPort = getInputPorts().createPort("validation example set");
     private InputPort exampleSetInputPortOriginal = getInputPorts().createPort("original example set");
+    private InputPort matrixInputPort = getInputPorts().createPort("dissimilarity matrix");
 
     //private OutputPort exampleSetOutputPort = getOutputPorts().createPassThroughPort("example set");
     private OutputPort exampleSetOutputPort = getOutputPorts().createPort("example set");
     private OutputPort modelOutputPort = getOutputPorts().createPort("model");
     private OutputPort prototypesOutputPort = getOutputPorts().createPort("prototypes");
     private OutputPort costProgressOutputPort = getOutputPorts().createPort("cost progress");
+    private OutputPort telemetryOutputPort = getOutputPorts().createPort("telemetry");
 
 
     /**
@@ -91,6 +120,67 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
      * Parameter for error Log
      */
     public static final String PARAMETER_COST_LOG = "error log";
+    /**
+     * Parameter for the storage of the squared dissimilarity matrix
+     */
+    public static final String PARAMETER_MATRIX_STORAGE = "matrix storage";
+    /**
+     * Parameter for the directory of memory-mapped matrix files
+     */
+    public static final String PARAMETER_MATRIX_DIRECTORY = "matrix directory";
+    /**
+     * Parameter for the precision of the packed squared dissimilarity matrix
+     */
+    public static final String PARAMETER_MATRIX_PRECISION = "matrix precision";
+    /**
+     * Parameter for the number of threads of the training
+     */
+    public static final String PARAMETER_THREADS = "threads";
+    /**
+     * Parameter for the optimization of the prototypes
+     */
+    public static final String PARAMETER_TRAINING_MODE = "training mode";
+    /**
+     * Parameter for the number of examples of an online mini-batch
+     */
+    public static final String PARAMETER_BATCH_SIZE = "batch size";
+    /**
+     * Parameter for the kind of dissimilarities in the training set
+     */
+    public static final String PARAMETER_DISSIMILARITY_INPUT = "dissimilarity input";
+
+    public static final String[] DISSIMILARITY_INPUTS = {"full matrix", "landmarks", "sparse triplets", "feature vectors", "matrix object"};
+    public static final int DISSIMILARITY_INPUT_FULL_MATRIX = 0;
+    public static final int DISSIMILARITY_INPUT_LANDMARKS = 1;
+    public static final int DISSIMILARITY_INPUT_SPARSE = 2;
+    public static final int DISSIMILARITY_INPUT_VECTORS = 3;
+    public static final int DISSIMILARITY_INPUT_MATRIX_OBJECT = 4;
+    /**
+     * Parameter for the number of dissimilarity rows cached when they are computed from feature vectors, 0 sizes it from the classes
+     */
+    public static final String PARAMETER_ROW_CACHE_SIZE = "row cache size";
+    /**
+     * Parameter for the change of the cost per iteration, relative to max(|cost|, 1), the training stops at
+     */
+    public static final String PARAMETER_CONVERGENCE_TOLERANCE = "convergence tolerance";
+    /**
+     * Parameter for the fraction of training points changing their winners the training stops at
+     */
+    public static final String PARAMETER_WINNER_CHANGE_TOLERANCE = "winner change tolerance";
+
+    public static final String[] TRAINING_MODES = {"online", "batch", "median"};
+    public static final int TRAINING_MODE_ONLINE = RGLVQEngine.TRAINING_MODE_ONLINE;
+    public static final int TRAINING_MODE_BATCH = RGLVQEngine.TRAINING_MODE_BATCH;
+    public static final int TRAINING_MODE_MEDIAN = RGLVQEngine.TRAINING_MODE_MEDIAN;
+
+    public static final String[] MATRIX_STORAGE_MODES = {"packed", "memory mapped"};
+    public static final int MATRIX_STORAGE_PACKED = 0;
+    public static final int MATRIX_STORAGE_MAPPED = 1;
+
+    public static final String[] MATRIX_PRECISIONS = {"double", "float", "16 bit"};
+    public static final int MATRIX_PRECISION_DOUBLE = 0;
+    public static final int MATRIX_PRECISION_FLOAT = 1;
+    public static final int MATRIX_PRECISION_16_BIT = 2;
 
 
     private int ppc; //K
@@ -99,11 +189,8 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
     private boolean costLog;
     ExampleSet initialPrototypes;
     ExampleSet optimizedPrototypes;
-    List<Attribute> trainingAttributes;
-    List<Attribute> trainingAttributesOriginal;
-    double[][] dissMatrix;
-    double[][] squaredDissMatrix;
-    double[][]dissMatrixOriginal;
+    SquaredDissimilarityMatrix squaredDissMatrix;
+    double[] classValues; //sorted distinct labels, indexed by the class indices of the engine
 
     /**
      * Constructor - gets called, as soon the operator gets dragged into process panel
@@ -113,10 +200,12 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
     public RGLVQOperator(OperatorDescription description) {
         super(description);
 
-        //Preconditions training set input port
-        exampleSetInputPort.addPrecondition(new CapabilityPrecondition(this, exampleSetInputPort));
-        exampleSetInputPort.addPrecondition(new ExampleSetPrecondition(exampleSetInputPort, "label", 0));
-        exampleSetInputPort.addPrecondition(new CapabilityPrecondition(new CapabilityProvider() {
+        //Preconditions training set input port, which is not read if a matrix object is trained on
+        exampleSetInputPort.addPrecondition(new ParameterCategoryPrecondition(this, PARAMETER_DISSIMILARITY_INPUT,
+                new CapabilityPrecondition(this, exampleSetInputPort), DISSIMILARITY_INPUT_MATRIX_OBJECT));
+        exampleSetInputPort.addPrecondition(new ParameterCategoryPrecondition(this, PARAMETER_DISSIMILARITY_INPUT,
+                new ExampleSetPrecondition(exampleSetInputPort, "label", 0), DISSIMILARITY_INPUT_MATRIX_OBJECT));
+        exampleSetInputPort.addPrecondition(new ParameterCategoryPrecondition(this, PARAMETER_DISSIMILARITY_INPUT, new CapabilityPrecondition(new CapabilityProvider() {
 
             @Override
             public boolean supportsCapability(OperatorCapability capability) {
@@ -132,11 +221,13 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
                 }
 
             }
-        }, exampleSetInputPort));
+        }, exampleSetInputPort), DISSIMILARITY_INPUT_MATRIX_OBJECT));
 
         //Transformation Rules for Metadata
         getTransformer().addPassThroughRule(exampleSetInputPort, exampleSetOutputPort);
-        getTransformer().addRule(new GeneratePredictionModelTransformationRule(exampleSetInputPort, modelOutputPort, RGLVQClassificationModel.class));
+        addModelTransformationRule();
+        getTransformer().addGenerationRule(costProgressOutputPort, ExampleSet.class);
+        getTransformer().addGenerationRule(telemetryOutputPort, ExampleSet.class);
         addPrototypeTransformationRule();
 
         /**
@@ -157,66 +248,611 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
     public void doWork() throws OperatorException {
 
         //fetch data from InputPort and deliver it to the Outputport
+        if (getParameterAsInt(PARAMETER_DISSIMILARITY_INPUT) == DISSIMILARITY_INPUT_MATRIX_OBJECT) {
+            trainMatrixObjectModel(matrixInputPort.getData(DissimilarityMatrixIOObject.class), exampleSetInputPortOriginal.getDataOrNull(ExampleSet.class));
+            return;
+        }
         ExampleSet trainingSet = exampleSetInputPort.getData(ExampleSet.class);
-        ExampleSet trainingSetOriginal = exampleSetInputPortOriginal.getData(ExampleSet.class);
+        if (getParameterAsInt(PARAMETER_DISSIMILARITY_INPUT) == DISSIMILARITY_INPUT_LANDMARKS) {
+            trainLandmarkModel(trainingSet);
+            return;
+        }
+        if (getParameterAsInt(PARAMETER_DISSIMILARITY_INPUT) == DISSIMILARITY_INPUT_VECTORS) {
+            trainVectorModel(trainingSet);
+            return;
+        }
+        if (getParameterAsInt(PARAMETER_DISSIMILARITY_INPUT) == DISSIMILARITY_INPUT_SPARSE) {
+            trainSparseModel(trainingSet, exampleSetInputPortOriginal.getData(ExampleSet.class));
+            return;
+        }
+        ExampleSet trainingSetOriginal = exampleSetInputPortOriginal.getDataOrNull(ExampleSet.class);
 
         //Caching Matrix
-        Attributes tempTrainingAttributes = trainingSet.getAttributes();
-        trainingAttributes = new ArrayList<Attribute>(tempTrainingAttributes.size());
-        dissMatrix = new double[trainingSet.size()][tempTrainingAttributes.size()];//
-        squaredDissMatrix = new double[trainingSet.size()][tempTrainingAttributes.size()];//
-        int i = 0;
+        Attribute[] matrixAttributes = trainingSet.getAttributes().createRegularAttributeArray();
+        int[] columnIndices = findMatrixColumns(trainingSet, matrixAttributes);
+        squaredDissMatrix = readSquaredMatrix(trainingSet, matrixAttributes, columnIndices);
+
+        //labels of the training points behind the matrix rows, the matrix rows are labelled themselves
+        //unless the original example set is connected
+        int[] labels;
+        if (trainingSetOriginal != null) {
+            for (int column : columnIndices) {
+                if (column >= trainingSetOriginal.size()) {
+                    throw new UserError(this, "rglvq.matrix_labels", "the original example set has " + trainingSetOriginal.size() + " examples but the matrix " + matrixAttributes.length + " columns");
+                }
+            }
+            labels = extractClassIndices(trainingSetOriginal, columnIndices);
+        } else {
+            labels = extractClassIndices(trainingSet, null);
+        }
+
+        //get selected Hyperparameters
+        ppc = getParameterAsInt(PARAMETER_PROTOTYPES_PER_CLASS);
+        numberOfIterations = getParameterAsInt(PARAMETER_ITERATIONS); //T
+        initialLearningRate = getParameterAsDouble(PARAMETER_LEARNING_RATE); //α
+        costLog = getParameterAsBoolean(PARAMETER_COST_LOG);
+
+        //initialize Prototypes
+        initialPrototypes = initializeCodebooks(trainingSet, ppc);
+
+        //train with the engine
+        TrainedPrototypes result = trainPrototypes(labels, columnIndices);
+
+        RGLVQClassificationModel<Double> classificationModel = new RGLVQClassificationModel<Double>(optimizedPrototypes, trainingSet, squaredDissMatrix, columnIndices, result.getCoefficientCutoff());
+        PredictionModel rapidMinerModel = classificationModel;
+        exampleSetOutputPort.deliver(trainingSet);
+        modelOutputPort.deliver(rapidMinerModel);
+        prototypesOutputPort.deliver(optimizedPrototypes);
+    }
+
+    /**
+     * Creates the training engine with the hyperparameters of the operator.
+     * @return - configured engine
+     */
+    protected RGLVQEngine createEngine() throws OperatorException {
+        RGLVQEngine engine = new RGLVQEngine();
+        engine.setTrainingMode(getParameterAsInt(PARAMETER_TRAINING_MODE));
+        engine.setIterations(numberOfIterations);
+        engine.setLearningRate(initialLearningRate);
+        engine.setBatchSize(getParameterAsInt(PARAMETER_BATCH_SIZE));
+        engine.setExecutor(new ConcurrencyContextTaskExecutor(Resources.getConcurrencyContext(this), getParameterAsInt(PARAMETER_THREADS)));
+        engine.setRandom(RandomGenerator.getRandomGenerator(this));
+        engine.setOperator(this);
+        engine.setStoppingCriteria(getParameterAsDouble(PARAMETER_CONVERGENCE_TOLERANCE), getParameterAsDouble(PARAMETER_WINNER_CHANGE_TOLERANCE));
+        return engine;
+    }
+
+    /**
+     * Reads the labels of the training points in one pass and converts them into class indices, see
+     * {@link #toClassIndices(double[])}.
+     * @param labelledSet - examples with a label
+     * @param rows - example of every training point, null for all examples in their order
+     * @return - class index of every training point
+     */
+    protected int[] extractClassIndices(ExampleSet labelledSet, int[] rows) {
+        double[] values;
+        if (rows == null) {
+            values = new double[labelledSet.size()];
+            int i = 0;
+            for (Example example : labelledSet) {
+                values[i++] = example.getLabel();
+            }
+        } else {
+            values = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                values[i] = labelledSet.getExample(rows[i]).getLabel();
+            }
+        }
+        return toClassIndices(values);
+    }
+
+    /**
+     * Converts labels into indices of their sorted distinct values, which are kept in {@link #classValues}.
+     * @param matrixLabels - label of every matrix row
+     * @return - class index of every matrix row
+     */
+    protected int[] toClassIndices(double[] matrixLabels) {
+        TreeSet<Double> distinctLabels = new TreeSet<>();
+        for (double label : matrixLabels) {
+            distinctLabels.add(label);
+        }
+        classValues = new double[distinctLabels.size()];
+        int c = 0;
+        for (double label : distinctLabels) {
+            classValues[c++] = label;
+        }
+        int[] labels = new int[matrixLabels.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = Arrays.binarySearch(classValues, matrixLabels[i]);
+        }
+        return labels;
+    }
+
+    /**
+     * Trains the initial prototypes with labels given as values, see {@link #trainPrototypes(int[], int[])}.
+     * @param matrixLabels - label of every matrix row
+     * @param columnIndices - attribute position of the prototypes for every matrix row
+     * @return - trained prototypes
+     */
+    protected TrainedPrototypes trainPrototypes(double[] matrixLabels, int[] columnIndices) throws OperatorException {
+        return trainPrototypes(toClassIndices(matrixLabels), columnIndices);
+    }
+
+    /**
+     * Trains the initial prototypes with the {@link RGLVQEngine} and writes the trained coefficients
+     * back into them as {@link #optimizedPrototypes}. The coefficients of matrix row i belong to the
+     * attribute at position columnIndices[i]. Delivers the cost progress and the telemetry.
+     * @param labels - class index of every matrix row into {@link #classValues}
+     * @param columnIndices - attribute position of the prototypes for every matrix row
+     * @return - trained prototypes
+     */
+    protected TrainedPrototypes trainPrototypes(int[] labels, int[] columnIndices) throws OperatorException {
+        int size = columnIndices.length;
+
+        Attribute[] prototypeAttributes = initialPrototypes.getAttributes().createRegularAttributeArray();
+        double[][] initialCoefficients = new double[initialPrototypes.size()][size];
+        int[] prototypeLabels = new int[initialPrototypes.size()];
         int j = 0;
+        for (Example prototype : initialPrototypes) {
+            for (int i = 0; i < size; i++) {
+                initialCoefficients[j][i] = prototype.getValue(prototypeAttributes[columnIndices[i]]);
+            }
+            prototypeLabels[j] = Arrays.binarySearch(classValues, prototype.getLabel());
+            j++;
+        }
+
+        TrainedPrototypes result = createEngine().train(squaredDissMatrix, labels, initialCoefficients, prototypeLabels);
 
-        for (Example p : trainingSet) {
-            j = 0;
-            for (Attribute a : tempTrainingAttributes) {
-                dissMatrix[i][j] = p.getValue(a);
-                squaredDissMatrix[i][j] = Math.pow(dissMatrix[i][j], 2);
-                //LogService.getRoot().log(Level.INFO, "Operator: dissMatrix doWork: " + squaredDissMatrix[i][j]);
-                //LogService.getRoot().log(Level.INFO, "Operator: i : " + i);
-                //LogService.getRoot().log(Level.INFO, "Operator: j  " + j);
-                j++;
+        j = 0;
+        for (Example prototype : initialPrototypes) {
+            for (Attribute attribute : prototypeAttributes) {
+                prototype.setValue(attribute, 0);
+            }
+            int[] support = result.getSupport(j);
+            double[] coefficients = result.getCoefficients(j);
+            for (int k = 0; k < support.length; k++) {
+                prototype.setValue(prototypeAttributes[columnIndices[support[k]]], coefficients[k]);
             }
+            j++;
+        }
+        optimizedPrototypes = initialPrototypes;
+        deliverCostProgress(result.getCostFunctionValues());
+        telemetryOutputPort.deliver(result.getTelemetry().createExampleSet());
+        return result;
+    }
+
+    /**
+     * Trains on a sparse set of dissimilarities, e.g. the k nearest neighbours of every training point.
+     * The training points are the examples of the original example set in their order, their
+     * dissimilarities are given as (row, column, dissimilarity) triplets. Pairs without a triplet are
+     * imputed as described in {@link SparseSquaredDissimilarityMatrix}.
+     * <p>
+     * The prototypes and the model have one attribute per training point named att1 ... attN, as
+     * RapidMiner names the columns of a dense matrix file without header, so the model scores dense
+     * dissimilarities to the training points.
+     * @param tripletSet - triplets, see {@link #readSparseMatrix(ExampleSet, int)}
+     * @param trainingSetOriginal - training points with their labels
+     * @throws OperatorException - if a triplet is invalid
+     */
+    protected void trainSparseModel(ExampleSet tripletSet, ExampleSet trainingSetOriginal) throws OperatorException {
+        int size = trainingSetOriginal.size();
+        squaredDissMatrix = readSparseMatrix(tripletSet, size);
+
+        double[] matrixLabels = new double[size];
+        int[] columnIndices = new int[size];
+        int i = 0;
+        for (Example example : trainingSetOriginal) {
+            matrixLabels[i] = example.getLabel();
+            columnIndices[i] = i;
             i++;
         }
+        initialPrototypes = initializePointPrototypes(trainingSetOriginal.getAttributes().getLabel(), matrixLabels);
 
-        //getLabelindex
-        Attributes tempTrainingAttributesOriginal = trainingSetOriginal.getAttributes();
-        trainingAttributesOriginal = new ArrayList<Attribute>(tempTrainingAttributesOriginal.size());
-        dissMatrixOriginal = new double[trainingSetOriginal.size()][tempTrainingAttributesOriginal.size()];
-        i = 0;
-        j = 0;
-        double [] labelList = new double [dissMatrixOriginal.length];
+        TrainedPrototypes result = trainPrototypes(matrixLabels, columnIndices);
+
+        exampleSetOutputPort.deliver(tripletSet);
+        modelOutputPort.deliver(new RGLVQClassificationModel<Double>(optimizedPrototypes, optimizedPrototypes, squaredDissMatrix, columnIndices, result.getCoefficientCutoff()));
+        prototypesOutputPort.deliver(optimizedPrototypes);
+    }
+
+    /**
+     * Trains on a matrix read by the Read Dissimilarity Matrix operator, which is used as it is instead
+     * of being copied from an ExampleSet. The labels are taken from the original example set if it is
+     * connected, otherwise from the matrix, where they become the values of a nominal label. As in the
+     * sparse mode the prototypes and the model have one attribute per training point named att1 ... attN.
+     * @param matrixObject - squared dissimilarities, optionally with labels
+     * @param trainingSetOriginal - training points with their labels in the order of the matrix rows, may be null
+     * @throws OperatorException - if there are no labels for the matrix rows
+     */
+    protected void trainMatrixObjectModel(DissimilarityMatrixIOObject matrixObject, ExampleSet trainingSetOriginal) throws OperatorException {
+        squaredDissMatrix = matrixObject.getMatrix();
+        int size = squaredDissMatrix.size();
+        double[] matrixLabels = new double[size];
+        int[] columnIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            columnIndices[i] = i;
+        }
+        Attribute trainingLabel;
+        if (trainingSetOriginal != null) {
+            if (trainingSetOriginal.size() != size) {
+                throw new UserError(this, "rglvq.matrix_labels", "the original example set has " + trainingSetOriginal.size() + " examples but the matrix " + size + " rows");
+            }
+            int i = 0;
+            for (Example example : trainingSetOriginal) {
+                matrixLabels[i++] = example.getLabel();
+            }
+            trainingLabel = trainingSetOriginal.getAttributes().getLabel();
+        } else if (matrixObject.getLabels() != null) {
+            trainingLabel = AttributeFactory.createAttribute("label", Ontology.NOMINAL);
+            TreeSet<Double> classes = new TreeSet<>();
+            for (double label : matrixObject.getLabels()) {
+                classes.add(label);
+            }
+            for (double cls : classes) {
+                trainingLabel.getMapping().mapString(Tools.formatIntegerIfPossible(cls));
+            }
+            for (int i = 0; i < size; i++) {
+                matrixLabels[i] = trainingLabel.getMapping().getIndex(Tools.formatIntegerIfPossible(matrixObject.getLabels()[i]));
+            }
+        } else {
+            throw new UserError(this, "rglvq.matrix_labels", "the matrix has no labels and the original example set is not connected");
+        }
+        initialPrototypes = initializePointPrototypes(trainingLabel, matrixLabels);
+
+        TrainedPrototypes result = trainPrototypes(matrixLabels, columnIndices);
+
+        if (trainingSetOriginal != null) {
+            exampleSetOutputPort.deliver(trainingSetOriginal);
+        }
+        modelOutputPort.deliver(new RGLVQClassificationModel<Double>(optimizedPrototypes, optimizedPrototypes, squaredDissMatrix, columnIndices, result.getCoefficientCutoff()));
+        prototypesOutputPort.deliver(optimizedPrototypes);
+    }
 
-        for(Example q : trainingSetOriginal){
-            j=0;
-            for (Attribute b : tempTrainingAttributesOriginal) {
-                labelList[i] = q.getLabel();
+    /**
+     * Trains on feature vectors: the regular attributes of the training set are compared with the
+     * selected distance measure and the dissimilarity rows are computed when the training first needs
+     * them, keeping the most recently used rows in a bounded cache. The prototypes are combinations of
+     * the training points as in the other modes, the model scores new feature vectors by their
+     * distances to the support points. The hit rate of the row cache is logged after the training.
+     * @param trainingSet - training ExampleSet of feature vectors with a label
+     * @throws OperatorException - if the distance measure cannot be created
+     */
+    protected void trainVectorModel(ExampleSet trainingSet) throws OperatorException {
+        Attribute[] featureAttributes = trainingSet.getAttributes().createRegularAttributeArray();
+        int size = trainingSet.size();
+        double[][] vectors = new double[size][featureAttributes.length];
+        double[] matrixLabels = new double[size];
+        int[] columnIndices = new int[size];
+        int i = 0;
+        for (Example example : trainingSet) {
+            for (int a = 0; a < featureAttributes.length; a++) {
+                vectors[i][a] = example.getValue(featureAttributes[a]);
             }
+            matrixLabels[i] = example.getLabel();
+            columnIndices[i] = i;
             i++;
         }
+        DistanceMeasure distanceMeasure = DistanceMeasures.createMeasure(this);
+        distanceMeasure.init(trainingSet);
+        DistanceMeasureSquaredDissimilarityMatrix lazyMatrix = new DistanceMeasureSquaredDissimilarityMatrix(vectors, distanceMeasure, getRowCacheCapacity(matrixLabels));
+        squaredDissMatrix = lazyMatrix;
+        initialPrototypes = initializePointPrototypes(trainingSet.getAttributes().getLabel(), matrixLabels);
 
-        //get selected Hyperparameters
+        TrainedPrototypes result = trainPrototypes(matrixLabels, columnIndices);
+        LogService.getRoot().log(Level.INFO, "RGLVQ row cache: " + lazyMatrix.getCacheHits() + " hits, " + lazyMatrix.getCacheMisses()
+                + " misses, hit rate " + String.format("%.1f%%", 100 * lazyMatrix.getCacheHitRate()));
+
+        exampleSetOutputPort.deliver(trainingSet);
+        modelOutputPort.deliver(new VectorRGLVQClassificationModel(optimizedPrototypes, trainingSet, lazyMatrix, columnIndices, result.getCoefficientCutoff()));
+        prototypesOutputPort.deliver(optimizedPrototypes);
+    }
+
+    /**
+     * An update reads the support rows of the classes of its two winners, so without a configured
+     * row cache size the cache holds the points of the two largest classes.
+     * @param matrixLabels - label of every matrix row
+     * @return - number of cached dissimilarity rows
+     * @throws UndefinedParameterError
+     */
+    protected int getRowCacheCapacity(double[] matrixLabels) throws UndefinedParameterError {
+        int capacity = getParameterAsInt(PARAMETER_ROW_CACHE_SIZE);
+        if (capacity > 0) {
+            return capacity;
+        }
+        double[] sortedLabels = matrixLabels.clone();
+        Arrays.sort(sortedLabels);
+        int largest = 0;
+        int secondLargest = 0;
+        int start = 0;
+        for (int i = 1; i <= sortedLabels.length; i++) {
+            if (i == sortedLabels.length || sortedLabels[i] != sortedLabels[start]) {
+                int classSize = i - start;
+                if (classSize > largest) {
+                    secondLargest = largest;
+                    largest = classSize;
+                } else if (classSize > secondLargest) {
+                    secondLargest = classSize;
+                }
+                start = i;
+            }
+        }
+        return largest + secondLargest;
+    }
+
+    /**
+     * Delivers the cost of every iteration on the cost progress port and writes it to the log if the
+     * error log is enabled.
+     * @param costValues - cost of every iteration
+     */
+    protected void deliverCostProgress(List<Double> costValues) {
+        costLog = getParameterAsBoolean(PARAMETER_COST_LOG);
+        Attribute iteration = AttributeFactory.createAttribute("iteration", Ontology.INTEGER);
+        Attribute cost = AttributeFactory.createAttribute("cost", Ontology.REAL);
+        ExampleSetBuilder builder = ExampleSets.from(iteration, cost).withExpectedSize(costValues.size());
+        for (int i = 0; i < costValues.size(); i++) {
+            builder.addRow(new double[]{i + 1, costValues.get(i)});
+            if (costLog) {
+                LogService.getRoot().log(Level.INFO, "RGLVQ iteration " + (i + 1) + ": cost " + costValues.get(i));
+            }
+        }
+        costProgressOutputPort.deliver(builder.build());
+    }
+
+    /**
+     * Creates prototypes with one attribute per training point, named att1 ... attN as RapidMiner names
+     * the columns of a dense matrix file without header. All coefficients are zero, so the model
+     * initializes them randomly.
+     * @param trainingLabel - label attribute of the training points
+     * @param matrixLabels - label of every training point
+     * @return - prototypes of every class
+     */
+    protected ExampleSet initializePointPrototypes(Attribute trainingLabel, double[] matrixLabels) throws OperatorException {
         ppc = getParameterAsInt(PARAMETER_PROTOTYPES_PER_CLASS);
         numberOfIterations = getParameterAsInt(PARAMETER_ITERATIONS); //T
         initialLearningRate = getParameterAsDouble(PARAMETER_LEARNING_RATE); //α
-        costLog = getParameterAsBoolean(PARAMETER_COST_LOG);
+        TreeSet<Double> classes = new TreeSet<>();
+        for (double label : matrixLabels) {
+            classes.add(label);
+        }
+        int size = matrixLabels.length;
+        List<Attribute> prototypeAttributes = new ArrayList<>(size + 1);
+        for (int i = 0; i < size; i++) {
+            prototypeAttributes.add(AttributeFactory.createAttribute("att" + (i + 1), Ontology.REAL));
+        }
+        Attribute label = AttributeFactory.createAttribute(trainingLabel);
+        prototypeAttributes.add(label);
+        ExampleSetBuilder builder = ExampleSets.from(prototypeAttributes).withRole(label, "label");
+        double[] row = new double[size + 1];
+        for (double cls : classes) {
+            row[size] = cls;
+            for (int k = 0; k < ppc; k++) {
+                builder.addRow(row);
+            }
+        }
+        return builder.build();
+    }
 
-        //initialize Prototypes
-        initialPrototypes = initializeCodebooks(trainingSet, ppc);
+    /**
+     * Reads the dissimilarity triplets into a CSR matrix. The first three regular attributes hold the
+     * row and the column, counted from 1 in the order of the original example set, and the
+     * dissimilarity; the dissimilarities are squared like the full matrix.
+     * @param tripletSet - one example per known dissimilarity
+     * @param size - number of training points
+     * @return - sparse squared dissimilarity matrix
+     * @throws OperatorException - if the triplets are malformed
+     */
+    protected SparseSquaredDissimilarityMatrix readSparseMatrix(ExampleSet tripletSet, int size) throws OperatorException {
+        Attribute[] tripletAttributes = tripletSet.getAttributes().createRegularAttributeArray();
+        if (tripletAttributes.length < 3) {
+            throw new UserError(this, "rglvq.sparse_entry", "the triplets need a row, a column and a dissimilarity attribute");
+        }
+        int[] rows = new int[tripletSet.size()];
+        int[] columns = new int[tripletSet.size()];
+        double[] squaredValues = new double[tripletSet.size()];
+        int t = 0;
+        for (Example triplet : tripletSet) {
+            rows[t] = (int) triplet.getValue(tripletAttributes[0]) - 1;
+            columns[t] = (int) triplet.getValue(tripletAttributes[1]) - 1;
+            double value = triplet.getValue(tripletAttributes[2]);
+            squaredValues[t] = value * value;
+            t++;
+        }
+        try {
+            return SparseSquaredDissimilarityMatrix.fromTriplets(size, rows, columns, squaredValues, Double.NaN);
+        } catch (IllegalArgumentException e) {
+            throw new UserError(this, e, "rglvq.sparse_entry", e.getMessage());
+        }
+    }
 
-        //instantiate RGLVQModel
-        AbstractModel rglvqModel = new RGLVQModel(initialPrototypes, numberOfIterations, initialLearningRate, squaredDissMatrix);
-        optimizedPrototypes = rglvqModel.run(trainingSet, labelList);
+    /**
+     * Trains on the dissimilarities to m landmarks instead of the full N x N matrix. The landmarks are
+     * embedded with the Nyström approximation and the prototypes are vectors in that embedding, so
+     * training and scoring never materialize more than N x r coordinates with r < m.
+     * @param trainingSet - training ExampleSet, its m regular attributes are the dissimilarities to the landmarks
+     * @throws OperatorException - if a landmark has no row in the training set
+     */
+    protected void trainLandmarkModel(ExampleSet trainingSet) throws OperatorException {
+        Attribute[] landmarkAttributes = trainingSet.getAttributes().createRegularAttributeArray();
+        NystroemEmbedding embedding = NystroemEmbedding.fromLandmarks(readLandmarkMatrix(trainingSet, landmarkAttributes));
+
+        double[][] coordinates = new double[trainingSet.size()][embedding.getDimension()];
+        double[] labels = new double[trainingSet.size()];
+        double[] squaredDissimilarities = new double[landmarkAttributes.length];
+        int i = 0;
+        for (Example example : trainingSet) {
+            for (int l = 0; l < landmarkAttributes.length; l++) {
+                double value = example.getValue(landmarkAttributes[l]);
+                squaredDissimilarities[l] = value * value;
+            }
+            embedding.embed(squaredDissimilarities, coordinates[i]);
+            labels[i] = example.getLabel();
+            i++;
+        }
+
+        ppc = getParameterAsInt(PARAMETER_PROTOTYPES_PER_CLASS);
+        numberOfIterations = getParameterAsInt(PARAMETER_ITERATIONS); //T
+        initialLearningRate = getParameterAsDouble(PARAMETER_LEARNING_RATE); //α
+        TreeSet<Double> classes = new TreeSet<>();
+        for (double label : labels) {
+            classes.add(label);
+        }
+        double[] prototypeLabels = new double[classes.size() * ppc];
+        i = 0;
+        for (double label : classes) {
+            for (int k = 0; k < ppc; k++) {
+                prototypeLabels[i++] = label;
+            }
+        }
+        double[][] prototypes = NystroemRGLVQModel.initialPrototypes(coordinates, labels, prototypeLabels, RandomGenerator.getRandomGenerator(this));
+        NystroemRGLVQModel model = new NystroemRGLVQModel(embedding, numberOfIterations, initialLearningRate, prototypes, prototypeLabels);
+        model.setCostTolerance(getParameterAsDouble(PARAMETER_CONVERGENCE_TOLERANCE));
+        model.setOperator(this);
+        prototypes = model.run(coordinates, labels);
+        deliverCostProgress(model.getCostFunctionValues());
+        telemetryOutputPort.deliver(model.getTelemetry().createExampleSet());
+
+        //prototypes as examples over the dimensions of the embedding
+        List<Attribute> prototypeAttributes = new ArrayList<>(embedding.getDimension() + 1);
+        for (int k = 0; k < embedding.getDimension(); k++) {
+            prototypeAttributes.add(AttributeFactory.createAttribute("dimension " + (k + 1), Ontology.REAL));
+        }
+        Attribute label = AttributeFactory.createAttribute(trainingSet.getAttributes().getLabel());
+        prototypeAttributes.add(label);
+        ExampleSetBuilder builder = ExampleSets.from(prototypeAttributes).withRole(label, "label");
+        for (int j = 0; j < prototypes.length; j++) {
+            double[] row = Arrays.copyOf(prototypes[j], prototypes[j].length + 1);
+            row[prototypes[j].length] = prototypeLabels[j];
+            builder.addRow(row);
+        }
+        optimizedPrototypes = builder.build();
 
-        RGLVQClassificationModel<Double> classificationModel = new RGLVQClassificationModel<Double>(optimizedPrototypes, trainingSet, squaredDissMatrix );
-        PredictionModel rapidMinerModel = classificationModel;
         exampleSetOutputPort.deliver(trainingSet);
-        modelOutputPort.deliver(rapidMinerModel);
+        modelOutputPort.deliver(new NystroemClassificationModel(trainingSet, embedding, prototypes, prototypeLabels));
         prototypesOutputPort.deliver(optimizedPrototypes);
     }
 
+    /**
+     * Reads the squared dissimilarities between the landmarks. The row of a landmark is the first
+     * example with a dissimilarity of zero to it, the result is symmetrized.
+     * @param trainingSet - training ExampleSet containing the landmarks
+     * @param landmarkAttributes - regular attributes of the training set, one per landmark
+     * @return - symmetric m x m squared dissimilarities
+     * @throws OperatorException - if a landmark has no row in the training set
+     */
+    protected double[][] readLandmarkMatrix(ExampleSet trainingSet, Attribute[] landmarkAttributes) throws OperatorException {
+        int m = landmarkAttributes.length;
+        double[][] landmarkRows = new double[m][];
+        for (Example example : trainingSet) {
+            for (int l = 0; l < m; l++) {
+                if (landmarkRows[l] == null && example.getValue(landmarkAttributes[l]) == 0) {
+                    landmarkRows[l] = new double[m];
+                    for (int j = 0; j < m; j++) {
+                        double value = example.getValue(landmarkAttributes[j]);
+                        landmarkRows[l][j] = value * value;
+                    }
+                    break;
+                }
+            }
+        }
+        for (int l = 0; l < m; l++) {
+            if (landmarkRows[l] == null) {
+                throw new UserError(this, "rglvq.no_landmark_row", landmarkAttributes[l].getName());
+            }
+        }
+        double[][] squaredLandmarkDissimilarities = new double[m][m];
+        for (int l = 0; l < m; l++) {
+            for (int j = 0; j < m; j++) {
+                squaredLandmarkDissimilarities[l][j] = l == j ? 0 : (landmarkRows[l][j] + landmarkRows[j][l]) / 2;
+            }
+        }
+        return squaredLandmarkDissimilarities;
+    }
+
+    /**
+     * Finds the attribute (column) holding the dissimilarities to each example (row) of the training set.
+     * For a complete matrix this is the diagonal, for a subset of the rows (e.g. a cross validation fold)
+     * every row is assigned to an unused column with a self-dissimilarity of zero. Identical points
+     * are interchangeable, so any free zero column is a valid choice.
+     * @param trainingSet - training ExampleSet, one row per training point
+     * @param matrixAttributes - regular attributes of the training set
+     * @return - attribute position for every row
+     * @throws OperatorException - if a row has no zero entry left
+     */
+    protected int[] findMatrixColumns(ExampleSet trainingSet, Attribute[] matrixAttributes) throws OperatorException {
+        int rows = trainingSet.size();
+        int[] columnIndices = new int[rows];
+        boolean diagonal = rows == matrixAttributes.length;
+        for (int i = 0; i < rows && diagonal; i++) {
+            diagonal = trainingSet.getExample(i).getValue(matrixAttributes[i]) == 0;
+            columnIndices[i] = i;
+        }
+        if (diagonal) {
+            return columnIndices;
+        }
+        boolean[] used = new boolean[matrixAttributes.length];
+        int i = 0;
+        for (Example example : trainingSet) {
+            int column = -1;
+            for (int j = 0; j < matrixAttributes.length && column < 0; j++) {
+                if (!used[j] && example.getValue(matrixAttributes[j]) == 0) {
+                    column = j;
+                }
+            }
+            if (column < 0) {
+                throw new UserError(this, "rglvq.no_self_dissimilarity", i + 1);
+            }
+            used[column] = true;
+            columnIndices[i] = column;
+            i++;
+        }
+        return columnIndices;
+    }
+
+    /**
+     * Copies the squared dissimilarities between the training points into the selected storage, the
+     * rows are read in parallel blocks by the {@link ExampleSetMatrixReader}. Packed storages only
+     * read the upper triangle of the input.
+     * @param trainingSet - training ExampleSet, one row per training point
+     * @param matrixAttributes - regular attributes of the training set
+     * @param columnIndices - attribute position for every row
+     * @return - squared dissimilarity matrix
+     */
+    protected SquaredDissimilarityMatrix readSquaredMatrix(ExampleSet trainingSet, Attribute[] matrixAttributes, int[] columnIndices) throws OperatorException {
+        WritableSquaredDissimilarityMatrix matrix = createMatrix(columnIndices.length);
+        ExampleSetMatrixReader.read(trainingSet, matrixAttributes, columnIndices, matrix,
+                new ConcurrencyContextTaskExecutor(Resources.getConcurrencyContext(this), getParameterAsInt(PARAMETER_THREADS)));
+        return matrix;
+    }
+
+    /**
+     * Creates the empty matrix for the selected storage.
+     * @param size - number of training points
+     * @return - empty squared dissimilarity matrix
+     * @throws OperatorException - if the matrix cannot be allocated
+     */
+    protected WritableSquaredDissimilarityMatrix createMatrix(int size) throws OperatorException {
+        if (getParameterAsInt(PARAMETER_MATRIX_STORAGE) == MATRIX_STORAGE_MAPPED) {
+            File directory = isParameterSet(PARAMETER_MATRIX_DIRECTORY) ? getParameterAsFile(PARAMETER_MATRIX_DIRECTORY) : null;
+            try {
+                return new MappedSquaredDissimilarityMatrix(size, directory);
+            } catch (IOException e) {
+                throw new UserError(this, e, "rglvq.matrix_file", e.getMessage());
+            }
+        }
+        try {
+            switch (getParameterAsInt(PARAMETER_MATRIX_PRECISION)) {
+                case MATRIX_PRECISION_FLOAT:
+                    return new PackedFloatSquaredDissimilarityMatrix(size);
+                case MATRIX_PRECISION_16_BIT:
+                    return new PackedQuantizedSquaredDissimilarityMatrix(size);
+                default:
+                    return new PackedSquaredDissimilarityMatrix(size);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new UserError(this, e, "rglvq.matrix_too_large", size);
+        }
+    }
+
     /**
      * Main method responsible for processing input example set
      * @param numberOfPrototypesPerClass - numberOfPrototypes
@@ -366,22 +1002,73 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
 
             ParameterType type;
 
-            type = new ParameterTypeInt(PARAMETER_ITERATIONS, "Number of Iterations", 1, Integer.MAX_VALUE, this.numberOfIterations);
+            type = new ParameterTypeCategory(PARAMETER_DISSIMILARITY_INPUT, "Full matrix: the attributes are the dissimilarities to all training points, labelled by the original example set if it is connected, otherwise by their own label. Landmarks: the attributes are the dissimilarities to a subset of the training points, which are embedded with the Nystroem approximation. Sparse triplets: every example holds a row, a column (counted from 1 in the order of the original example set) and their dissimilarity, missing pairs get the largest given dissimilarity. Feature vectors: the attributes are compared with the selected distance measure, dissimilarities are computed on demand. Matrix object: the matrix of the Read Dissimilarity Matrix operator, labelled by the original example set if it is connected", DISSIMILARITY_INPUTS, DISSIMILARITY_INPUT_FULL_MATRIX);
+            type.setExpert(false);
+            types.add(type);
+
+            for (ParameterType measureType : DistanceMeasures.getParameterTypes(this)) {
+                measureType.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_DISSIMILARITY_INPUT, DISSIMILARITY_INPUTS, false, DISSIMILARITY_INPUT_VECTORS));
+                types.add(measureType);
+            }
+
+            type = new ParameterTypeInt(PARAMETER_ROW_CACHE_SIZE, "Maximal number of dissimilarity rows kept in memory when they are computed from feature vectors, each takes 8 bytes per training point. The first rows read stay cached, the others are recomputed on every access. An update reads the rows of the supports of the two winning prototypes, 0 caches the points of the two largest classes", 0, Integer.MAX_VALUE, 0);
+            type.setExpert(true);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_DISSIMILARITY_INPUT, DISSIMILARITY_INPUTS, false, DISSIMILARITY_INPUT_VECTORS));
+            types.add(type);
+
+            type = new ParameterTypeCategory(PARAMETER_TRAINING_MODE, "Online: stochastic updates with a decaying learning rate. Batch: L-BFGS on the cost of all examples, one iteration per pass. Median: every prototype is a training point of its class, moved to the best one per epoch until none moves", TRAINING_MODES, TRAINING_MODE_ONLINE);
+            type.setExpert(false);
+            types.add(type);
+
+            type = new ParameterTypeInt(PARAMETER_ITERATIONS, "Number of Iterations (epochs online, maximal L-BFGS iterations in batch mode, maximal epochs in median mode)", 1, Integer.MAX_VALUE, this.numberOfIterations);
             type.setExpert(false);
             types.add(type);
 
             type = new ParameterTypeDouble(PARAMETER_LEARNING_RATE, "Learning Rate", 0.0000000001, 0.9999999999, this.initialLearningRate);
             type.setExpert(false);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_TRAINING_MODE, TRAINING_MODES, false, TRAINING_MODE_ONLINE));
+            types.add(type);
+
+            type = new ParameterTypeInt(PARAMETER_BATCH_SIZE, "Number of examples scored in parallel against the same prototypes before their averaged steps are applied, 1 updates after every example", 1, Integer.MAX_VALUE, 1);
+            type.setExpert(true);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_TRAINING_MODE, TRAINING_MODES, false, TRAINING_MODE_ONLINE));
             types.add(type);
 
             type = new ParameterTypeInt(PARAMETER_PROTOTYPES_PER_CLASS, "Number of prototypes per class", 1, Integer.MAX_VALUE, this.ppc);
             type.setExpert(false);
             types.add(type);
 
+            type = new ParameterTypeDouble(PARAMETER_CONVERGENCE_TOLERANCE, "The training stops once the cost changes by less than this fraction of the previous cost, or of 1 for costs below 1, between two iterations. 0 runs all iterations", 0, 1, 0);
+            type.setExpert(true);
+            types.add(type);
+
+            type = new ParameterTypeDouble(PARAMETER_WINNER_CHANGE_TOLERANCE, "The online training stops once fewer than this fraction of the training points change their closest correct or incorrect prototype in an epoch, 0 disables the criterion", 0, 1, 0);
+            type.setExpert(true);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_TRAINING_MODE, TRAINING_MODES, false, TRAINING_MODE_ONLINE));
+            types.add(type);
+
             type = new ParameterTypeBoolean(PARAMETER_COST_LOG, "Show Error for each epoch on Log-Screen", false, this.costLog);
             type.setExpert(false);
             types.add(type);
 
+            type = new ParameterTypeCategory(PARAMETER_MATRIX_STORAGE, "Storage of the squared dissimilarity matrix: packed on the heap or in a memory-mapped file for matrices exceeding the heap", MATRIX_STORAGE_MODES, MATRIX_STORAGE_PACKED);
+            type.setExpert(true);
+            types.add(type);
+
+            type = new ParameterTypeCategory(PARAMETER_MATRIX_PRECISION, "Precision of the packed matrix: double, float32 or 16 bit integers scaled per row. Distances are always accumulated in double precision", MATRIX_PRECISIONS, MATRIX_PRECISION_DOUBLE);
+            type.setExpert(true);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_MATRIX_STORAGE, MATRIX_STORAGE_MODES, false, MATRIX_STORAGE_PACKED));
+            types.add(type);
+
+            type = new ParameterTypeDirectory(PARAMETER_MATRIX_DIRECTORY, "Directory of the memory-mapped matrix file, the temporary directory if not set", true);
+            type.setExpert(true);
+            type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_MATRIX_STORAGE, MATRIX_STORAGE_MODES, false, MATRIX_STORAGE_MAPPED));
+            types.add(type);
+
+            type = new ParameterTypeInt(PARAMETER_THREADS, "Maximal number of threads of the matrix-vector products and of the mini-batch scoring, 0 uses all threads RapidMiner grants to the process", 0, Integer.MAX_VALUE, 0);
+            type.setExpert(true);
+            types.add(type);
+
             return types;
         }
 
@@ -406,6 +1093,56 @@ public class RGLVQOperator extends Operator implements CapabilityProvider {
         });
     }
 
+    /**
+     * Adds the rule generating the meta data of the model, whose class depends on the dissimilarity input.
+     * A matrix object is labelled by the original example set if it is connected, otherwise by its own labels.
+     */
+    protected void addModelTransformationRule() {
+        getTransformer().addRule(new MDTransformationRule() {
+            @Override
+            public void transformMD() {
+                int dissimilarityInput;
+                try {
+                    dissimilarityInput = getParameterAsInt(PARAMETER_DISSIMILARITY_INPUT);
+                } catch (UndefinedParameterError e) {
+                    dissimilarityInput = DISSIMILARITY_INPUT_FULL_MATRIX;
+                }
+                MetaData trainingMetaData;
+                if (dissimilarityInput == DISSIMILARITY_INPUT_MATRIX_OBJECT) {
+                    if (matrixInputPort.getMetaData() == null) {
+                        return;
+                    }
+                    trainingMetaData = exampleSetInputPortOriginal.getMetaData();
+                    if (!(trainingMetaData instanceof ExampleSetMetaData)) {
+                        ExampleSetMetaData labelMetaData = new ExampleSetMetaData();
+                        labelMetaData.addAttribute(new AttributeMetaData(Attributes.LABEL_NAME, Ontology.NOMINAL, Attributes.LABEL_NAME));
+                        trainingMetaData = labelMetaData;
+                    }
+                } else {
+                    trainingMetaData = exampleSetInputPort.getMetaData();
+                }
+                if (trainingMetaData instanceof ExampleSetMetaData) {
+                    modelOutputPort.deliverMD(new PredictionModelMetaData(getModelClass(dissimilarityInput), (ExampleSetMetaData) trainingMetaData));
+                }
+            }
+        });
+    }
+
+    /**
+     * @param dissimilarityInput - selected dissimilarity input
+     * @return - class of the model delivered for the dissimilarity input
+     */
+    protected Class<? extends PredictionModel> getModelClass(int dissimilarityInput) {
+        switch (dissimilarityInput) {
+            case DISSIMILARITY_INPUT_LANDMARKS:
+                return NystroemClassificationModel.class;
+            case DISSIMILARITY_INPUT_VECTORS:
+                return VectorRGLVQClassificationModel.class;
+            default:
+                return RGLVQClassificationModel.class;
+        }
+    }
+
     /**
      *
      * @param example - example
@@ -0,0 +1,161 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.OperatorDescription;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.UserError;
+import com.rapidminer.operator.ports.OutputPort;
+import com.rapidminer.parameter.ParameterType;
+import com.rapidminer.parameter.ParameterTypeBoolean;
+import com.rapidminer.parameter.ParameterTypeCategory;
+import com.rapidminer.parameter.ParameterTypeDouble;
+import com.rapidminer.parameter.ParameterTypeFile;
+import com.rapidminer.parameter.ParameterTypeInt;
+import com.rapidminer.parameter.ParameterTypeString;
+import com.rapidminer.parameter.conditions.EqualTypeCondition;
+import com.rapidminer.rglvq.concurrency.ConcurrencyContextTaskExecutor;
+import com.rapidminer.rglvq.ioobjects.DissimilarityMatrixIOObject;
+import com.rapidminer.rglvq.matrix.DissimilarityMatrixFile;
+import com.rapidminer.rglvq.matrix.PackedFloatSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedQuantizedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.PackedSquaredDissimilarityMatrix;
+import com.rapidminer.rglvq.matrix.WritableSquaredDissimilarityMatrix;
+import com.rapidminer.studio.internal.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Reads a dissimilarity matrix from a text or binary file directly into the packed matrix storage,
+ * see {@link DissimilarityMatrixFile} for the formats and the validation. Text files are parsed in
+ * parallel and the dissimilarities are squared while they are read, so no ExampleSet with one
+ * attribute per training point is built. The matrix feeds the RGLVQ operator with the matrix object
+ * dissimilarity input.
+ */
+public class ReadDissimilarityMatrixOperator extends Operator {
+
+    private OutputPort matrixOutputPort = getOutputPorts().createPort("matrix");
+
+    public static final String PARAMETER_FILE = "file";
+
+    public static final String PARAMETER_FILE_FORMAT = "file format";
+
+    public static final String[] FILE_FORMATS = {"text", "binary"};
+    public static final int FILE_FORMAT_TEXT = 0;
+    public static final int FILE_FORMAT_BINARY = 1;
+
+    public static final String PARAMETER_COLUMN_SEPARATOR = "column separator";
+
+    public static final String PARAMETER_LABEL_COLUMN = "label column";
+
+    public static final String PARAMETER_TOLERANCE = "tolerance";
+
+    /**
+     * @param description - operator description
+     */
+    public ReadDissimilarityMatrixOperator(OperatorDescription description) {
+        super(description);
+        getTransformer().addGenerationRule(matrixOutputPort, DissimilarityMatrixIOObject.class);
+    }
+
+    @Override
+    public void doWork() throws OperatorException {
+        File file = getParameterAsFile(PARAMETER_FILE);
+        IntFunction<WritableSquaredDissimilarityMatrix> storage = createStorage();
+        DissimilarityMatrixFile content;
+        try {
+            if (getParameterAsInt(PARAMETER_FILE_FORMAT) == FILE_FORMAT_BINARY) {
+                content = DissimilarityMatrixFile.readBinary(file, storage);
+            } else {
+                String separator = getParameterAsString(PARAMETER_COLUMN_SEPARATOR);
+                if (separator == null || separator.length() != 1) {
+                    throw new UserError(this, "rglvq.matrix_read", file, "the column separator must be a single character");
+                }
+                content = DissimilarityMatrixFile.readText(file, separator.charAt(0), getParameterAsBoolean(PARAMETER_LABEL_COLUMN),
+                        getParameterAsDouble(PARAMETER_TOLERANCE), storage,
+                        new ConcurrencyContextTaskExecutor(Resources.getConcurrencyContext(this), getParameterAsInt(RGLVQOperator.PARAMETER_THREADS)));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new UserError(this, e, "rglvq.matrix_read", file, e.getMessage());
+        }
+        matrixOutputPort.deliver(new DissimilarityMatrixIOObject(content.getMatrix(), content.getLabels()));
+    }
+
+    /**
+     * @return - constructor of the packed matrix of the selected precision
+     */
+    protected IntFunction<WritableSquaredDissimilarityMatrix> createStorage() throws OperatorException {
+        switch (getParameterAsInt(RGLVQOperator.PARAMETER_MATRIX_PRECISION)) {
+            case RGLVQOperator.MATRIX_PRECISION_FLOAT:
+                return PackedFloatSquaredDissimilarityMatrix::new;
+            case RGLVQOperator.MATRIX_PRECISION_16_BIT:
+                return PackedQuantizedSquaredDissimilarityMatrix::new;
+            default:
+                return PackedSquaredDissimilarityMatrix::new;
+        }
+    }
+
+    @Override
+    public List<ParameterType> getParameterTypes() {
+        List<ParameterType> types = super.getParameterTypes();
+
+        ParameterType type;
+
+        type = new ParameterTypeFile(PARAMETER_FILE, "Matrix file, one row of dissimilarities per line in the text format", "csv", false);
+        type.setExpert(false);
+        types.add(type);
+
+        type = new ParameterTypeCategory(PARAMETER_FILE_FORMAT, "Text: separated dissimilarities, one row per line. Binary: squared dissimilarities as written by the Write Dissimilarity Matrix operator", FILE_FORMATS, FILE_FORMAT_TEXT);
+        type.setExpert(false);
+        types.add(type);
+
+        type = new ParameterTypeString(PARAMETER_COLUMN_SEPARATOR, "Single character between the dissimilarities of a row", ";");
+        type.setExpert(false);
+        type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_FILE_FORMAT, FILE_FORMATS, false, FILE_FORMAT_TEXT));
+        types.add(type);
+
+        type = new ParameterTypeBoolean(PARAMETER_LABEL_COLUMN, "Every line ends with the numeric class label of its training point", true);
+        type.setExpert(false);
+        type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_FILE_FORMAT, FILE_FORMATS, false, FILE_FORMAT_TEXT));
+        types.add(type);
+
+        type = new ParameterTypeDouble(PARAMETER_TOLERANCE, "Largest dissimilarity of a training point to itself and largest relative asymmetry of a row and its column", 0, 1, 1E-6);
+        type.setExpert(true);
+        type.registerDependencyCondition(new EqualTypeCondition(this, PARAMETER_FILE_FORMAT, FILE_FORMATS, false, FILE_FORMAT_TEXT));
+        types.add(type);
+
+        type = new ParameterTypeCategory(RGLVQOperator.PARAMETER_MATRIX_PRECISION, "Precision of the packed matrix: double, float32 or 16 bit integers scaled per row", RGLVQOperator.MATRIX_PRECISIONS, RGLVQOperator.MATRIX_PRECISION_DOUBLE);
+        type.setExpert(true);
+        types.add(type);
+
+        type = new ParameterTypeInt(RGLVQOperator.PARAMETER_THREADS, "Maximal number of threads parsing a text file, 0 uses all threads RapidMiner grants to the process", 0, Integer.MAX_VALUE, 0);
+        type.setExpert(true);
+        types.add(type);
+
+        return types;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.table.AttributeFactory;
+import com.rapidminer.example.utils.ExampleSetBuilder;
+import com.rapidminer.example.utils.ExampleSets;
+import com.rapidminer.tools.LogService;
+import com.rapidminer.tools.Ontology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Counters of a training run, one record per epoch: wall time, updates, distance evaluations,
+ * matrix-vector products with their wall time, winner changes and the memory of the matrix backend.
+ * The counters are plain fields updated by the training thread only, parallel parts of the training
+ * report their totals after joining. Instead of a log line per update, the progress within an epoch
+ * is sampled to the log at most once per second.
+ */
+public class TrainingTelemetry {
+
+    /**
+     * Updates between two checks of the sampling clock
+     */
+    private static final long SAMPLE_INTERVAL = 1 << 12;
+    /**
+     * Minimal time between two sampled log lines
+     */
+    private static final long SAMPLE_NANOS = 1_000_000_000L;
+
+    private static final String[] COLUMNS = {"epoch", "wall time [ms]", "updates", "updates per second", "distance evaluations",
+            "matrix products", "matrix product time [ms]", "winner changes", "matrix memory [bytes]"};
+
+    private final List<double[]> epochs = new ArrayList<>();
+    private long epochStart;
+    private long updates;
+    private long distanceEvaluations;
+    private long productsAtStart;
+    private long productNanosAtStart;
+    private long nextSample = SAMPLE_INTERVAL;
+    private long lastSample;
+
+    /**
+     * Starts the counters of the next epoch.
+     * @param matrixProducts - matrix-vector products of the training so far
+     * @param matrixProductNanos - wall time of these products
+     */
+    public void startEpoch(long matrixProducts, long matrixProductNanos) {
+        epochStart = System.nanoTime();
+        lastSample = epochStart;
+        updates = 0;
+        distanceEvaluations = 0;
+        nextSample = SAMPLE_INTERVAL;
+        productsAtStart = matrixProducts;
+        productNanosAtStart = matrixProductNanos;
+    }
+
+    /**
+     * @param count - updates performed, e.g. single example steps
+     */
+    public void countUpdates(long count) {
+        updates += count;
+        if (updates >= nextSample) {
+            nextSample = updates + SAMPLE_INTERVAL;
+            long now = System.nanoTime();
+            if (now - lastSample >= SAMPLE_NANOS) {
+                lastSample = now;
+                LogService.getRoot().log(Level.FINE, "RGLVQ epoch " + (epochs.size() + 1) + ": " + updates + " updates, "
+                        + String.format("%.0f", updates * 1E9 / (now - epochStart)) + " updates/s");
+            }
+        }
+    }
+
+    /**
+     * @param count - distances between training points and prototypes evaluated
+     */
+    public void countDistances(long count) {
+        distanceEvaluations += count;
+    }
+
+    /**
+     * Records the epoch.
+     * @param winnerChanges - training points whose winners changed in the epoch, negative if not tracked
+     * @param matrixProducts - matrix-vector products of the training so far
+     * @param matrixProductNanos - wall time of these products
+     * @param matrixMemory - bytes held by the matrix backend
+     */
+    public void endEpoch(long winnerChanges, long matrixProducts, long matrixProductNanos, long matrixMemory) {
+        long nanos = System.nanoTime() - epochStart;
+        epochs.add(new double[]{epochs.size() + 1, nanos / 1E6, updates, nanos == 0 ? 0 : updates * 1E9 / nanos, distanceEvaluations,
+                matrixProducts - productsAtStart, (matrixProductNanos - productNanosAtStart) / 1E6,
+                winnerChanges < 0 ? Double.NaN : winnerChanges, matrixMemory});
+        LogService.getRoot().log(Level.FINE, "RGLVQ epoch " + epochs.size() + ": " + String.format("%.1f", nanos / 1E6) + " ms, " + updates + " updates");
+    }
+
+    /**
+     * @return - updates of the current epoch, or of the last one after {@link #endEpoch}
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return - one record per epoch, ordered like the columns of {@link #createExampleSet()}
+     */
+    public List<double[]> getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * @return - the records as an ExampleSet with one example per epoch, untracked values are missing
+     */
+    public ExampleSet createExampleSet() {
+        List<Attribute> attributes = new ArrayList<>(COLUMNS.length);
+        for (int c = 0; c < COLUMNS.length; c++) {
+            attributes.add(AttributeFactory.createAttribute(COLUMNS[c], c == 1 || c == 3 || c == 6 ? Ontology.REAL : Ontology.INTEGER));
+        }
+        ExampleSetBuilder builder = ExampleSets.from(attributes).withExpectedSize(epochs.size());
+        for (double[] epoch : epochs) {
+            builder.addRow(epoch);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+/**
+ * RGLVQ classification model of prototypes trained on feature vectors. A new example is scored from
+ * its own feature vector: its squared distances to the support points of the prototypes are computed
+ * with the distance measure of the training, so the model keeps the vectors of these points only.
+ */
+public class VectorRGLVQClassificationModel extends RGLVQClassificationModel<Double> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DistanceMeasure distanceMeasure;
+    private final double[][] supportVectors; //Feature vector of every used matrix row, null for the others
+
+    /**
+     * @param prototypes - optimized prototypes, dense over the training points
+     * @param trainingSet - training ExampleSet of the feature vectors
+     * @param dissimilarityMatrix - lazily computed squared dissimilarities of the feature vectors
+     * @param columnIndices - position of the prototype attribute belonging to every matrix row
+     * @param coefficientCutoff - coefficients below this fraction of the largest coefficient of their prototype are dropped
+     */
+    public VectorRGLVQClassificationModel(ExampleSet prototypes, ExampleSet trainingSet, DistanceMeasureSquaredDissimilarityMatrix dissimilarityMatrix,
+                                          int[] columnIndices, double coefficientCutoff) {
+        super(prototypes, trainingSet, dissimilarityMatrix, columnIndices, coefficientCutoff);
+        this.distanceMeasure = dissimilarityMatrix.getDistanceMeasure();
+        this.supportVectors = new double[dissimilarityMatrix.size()][];
+        for (int k : usedRows) {
+            supportVectors[k] = dissimilarityMatrix.getVector(k);
+        }
+    }
+
+    /**
+     * @return - the regular attributes of the example set matching the training features
+     */
+    @Override
+    protected Attribute[] getExampleAttributes(ExampleSet exampleSet) {
+        Attribute[] headerAttributes = getTrainingHeader().getAttributes().createRegularAttributeArray();
+        Attribute[] exampleAttributes = new Attribute[headerAttributes.length];
+        for (int a = 0; a < headerAttributes.length; a++) {
+            exampleAttributes[a] = exampleSet.getAttributes().get(headerAttributes[a].getName());
+        }
+        return exampleAttributes;
+    }
+
+    @Override
+    protected void readExampleValues(Example example, Attribute[] exampleAttributes, double[] exampleValues) {
+        double[] vector = new double[exampleAttributes.length];
+        for (int a = 0; a < exampleAttributes.length; a++) {
+            vector[a] = example.getValue(exampleAttributes[a]);
+        }
+        for (int k : usedRows) {
+            double distance = distanceMeasure.calculateDistance(vector, supportVectors[k]);
+            exampleValues[k] = distance * distance;
+        }
+    }
+
+    @Override
+    protected String getRowName(Attribute[] headerAttributes, int row) {
+        return "point " + (row + 1);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.operator;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.OperatorDescription;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.UserError;
+import com.rapidminer.operator.ports.InputPort;
+import com.rapidminer.operator.ports.OutputPort;
+import com.rapidminer.parameter.ParameterType;
+import com.rapidminer.parameter.ParameterTypeFile;
+import com.rapidminer.rglvq.ioobjects.DissimilarityMatrixIOObject;
+import com.rapidminer.rglvq.matrix.DissimilarityMatrixFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a dissimilarity matrix in the binary format of {@link DissimilarityMatrixFile}, which the
+ * Read Dissimilarity Matrix operator loads without parsing.
+ */
+public class WriteDissimilarityMatrixOperator extends Operator {
+
+    private InputPort matrixInputPort = getInputPorts().createPort("matrix", DissimilarityMatrixIOObject.class);
+    private OutputPort matrixOutputPort = getOutputPorts().createPort("matrix");
+
+    public static final String PARAMETER_FILE = "file";
+
+    /**
+     * @param description - operator description
+     */
+    public WriteDissimilarityMatrixOperator(OperatorDescription description) {
+        super(description);
+        getTransformer().addPassThroughRule(matrixInputPort, matrixOutputPort);
+    }
+
+    @Override
+    public void doWork() throws OperatorException {
+        DissimilarityMatrixIOObject matrix = matrixInputPort.getData(DissimilarityMatrixIOObject.class);
+        File file = getParameterAsFile(PARAMETER_FILE, true);
+        try {
+            new DissimilarityMatrixFile(matrix.getMatrix(), matrix.getLabels()).writeBinary(file);
+        } catch (IOException e) {
+            throw new UserError(this, e, "rglvq.matrix_write", file, e.getMessage());
+        }
+        matrixOutputPort.deliver(matrix);
+    }
+
+    @Override
+    public List<ParameterType> getParameterTypes() {
+        List<ParameterType> types = super.getParameterTypes();
+
+        ParameterType type = new ParameterTypeFile(PARAMETER_FILE, "Target file of the binary matrix", "rdm", false);
+        type.setExpert(false);
+        types.add(type);
+
+        return types;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.optimization;
+
+/**
+ * Function that can be evaluated together with its gradient.
+ */
+public interface DifferentiableFunction {
+
+    /**
+     * Evaluates the function and its gradient at a point.
+     *
+     * @param point - point to evaluate, must not be changed
+     * @param gradient - target array of the gradient, same length as the point
+     * @return - value of the function
+     */
+    double evaluate(double[] point, double[] gradient);
+}
@@ -0,0 +1,221 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package com.rapidminer.rglvq.optimization;
+
+/**
+ * Limited-memory BFGS minimizer with a backtracking (Armijo) line search. The inverse Hessian is
+ * approximated from the last pairs of steps and gradient changes by the two-loop recursion, so
+ * memory and time per iteration are linear in the number of variables.
+ * <p>
+ * The optimizer is driven one iteration at a time by {@link #iterate()}. The last evaluation of the
+ * function is always at the current point, so side effects of the function (e.g. cached values)
+ * belong to the point returned by {@link #getPoint()}.
+ */
+public class LimitedMemoryBFGS {
+
+    /**
+     * Sufficient decrease constant of the Armijo condition
+     */
+    private static final double ARMIJO = 1E-4;
+    private static final int MAX_BACKTRACKING_STEPS = 40;
+
+    private final DifferentiableFunction function;
+    private final int memory;
+    private final double tolerance;
+    private final double[][] steps; //s_k = x_k+1 - x_k
+    private final double[][] gradientChanges; //y_k = g_k+1 - g_k
+    private final double[] curvatures; //1 / (y_k * s_k)
+    private int stored;
+    private int newest = -1;
+
+    private double[] point;
+    private double[] gradient;
+    private double value;
+    private int evaluations;
+    private boolean converged;
+
+    /**
+     * Evaluates the function at the initial point.
+     *
+     * @param function - function to minimize
+     * @param initialPoint - starting point, is copied
+     * @param memory - number of stored correction pairs
+     * @param tolerance - relative decrease of the value below which the minimization has converged
+     */
+    public LimitedMemoryBFGS(DifferentiableFunction function, double[] initialPoint, int memory, double tolerance) {
+        this.function = function;
+        this.memory = memory;
+        this.tolerance = tolerance;
+        this.steps = new double[memory][];
+        this.gradientChanges = new double[memory][];
+        this.curvatures = new double[memory];
+        this.point = initialPoint.clone();
+        this.gradient = new double[point.length];
+        this.value = evaluate(point, gradient);
+    }
+
+    /**
+     * Performs one iteration: a quasi-Newton direction followed by a line search along it.
+     *
+     * @return - false if the minimization converged or no further decrease was found
+     */
+    public boolean iterate() {
+        if (converged) {
+            return false;
+        }
+        double[] direction = direction();
+        double slope = dot(gradient, direction);
+        if (slope >= 0) {
+            //the approximation lost positive definiteness, restart with steepest descent
+            stored = 0;
+            direction = negate(gradient);
+            slope = dot(gradient, direction);
+        }
+        if (slope == 0) {
+            converged = true;
+            return false;
+        }
+        //the two-loop recursion scales the direction, without history the first step is kept small
+        double step = stored > 0 ? 1 : Math.min(1, 1 / Math.sqrt(-slope));
+        double[] nextPoint = new double[point.length];
+        double[] nextGradient = new double[point.length];
+        double nextValue = Double.NaN;
+        boolean decreased = false;
+        for (int t = 0; t < MAX_BACKTRACKING_STEPS; t++) {
+            for (int k = 0; k < point.length; k++) {
+                nextPoint[k] = point[k] + step * direction[k];
+            }
+            nextValue = evaluate(nextPoint, nextGradient);
+            if (nextValue <= value + ARMIJO * step * slope) {
+                decreased = true;
+                break;
+            }
+            step *= 0.5;
+        }
+        if (!decreased) {
+            //restore the side effects of the current point
+            evaluate(point, gradient);
+            converged = true;
+            return false;
+        }
+        store(nextPoint, nextGradient);
+        converged = value - nextValue <= tolerance * Math.max(1, Math.abs(value));
+        point = nextPoint;
+        gradient = nextGradient;
+        value = nextValue;
+        return !converged;
+    }
+
+    /**
+     * @return - current point
+     */
+    public double[] getPoint() {
+        return point;
+    }
+
+    /**
+     * @return - value of the function at the current point
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return - number of function evaluations so far
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    private double evaluate(double[] x, double[] g) {
+        evaluations++;
+        return function.evaluate(x, g);
+    }
+
+    /**
+     * Stores the correction pair of the accepted step, pairs violating the curvature condition are skipped.
+     */
+    private void store(double[] nextPoint, double[] nextGradient) {
+        double[] s = new double[point.length];
+        double[] y = new double[point.length];
+        for (int k = 0; k < point.length; k++) {
+            s[k] = nextPoint[k] - point[k];
+            y[k] = nextGradient[k] - gradient[k];
+        }
+        double sy = dot(s, y);
+        if (sy <= 1E-10 * Math.sqrt(dot(s, s) * dot(y, y))) {
+            return;
+        }
+        newest = (newest + 1) % memory;
+        steps[newest] = s;
+        gradientChanges[newest] = y;
+        curvatures[newest] = 1 / sy;
+        stored = Math.min(stored + 1, memory);
+    }
+
+    /**
+     * Two-loop recursion for -H·g.
+     */
+    private double[] direction() {
+        double[] q = gradient.clone();
+        double[] a = new double[memory];
+        for (int n = 0, m = newest; n < stored; n++, m = (m - 1 + memory) % memory) {
+            a[m] = curvatures[m] * dot(steps[m], q);
+            axpy(-a[m], gradientChanges[m], q);
+        }
+        if (stored > 0) {
+            double[] y = gradientChanges[newest];
+            double scale = 1 / (curvatures[newest] * dot(y, y));
+            for (int k = 0; k < q.length; k++) {
+                q[k] *= scale;
+            }
+        }
+        for (int n = 0, m = (newest - stored + 1 + memory) % memory; n < stored; n++, m = (m + 1) % memory) {
+            double b = curvatures[m] * dot(gradientChanges[m], q);
+            axpy(a[m] - b, steps[m], q);
+        }
+        return negate(q);
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int k = 0; k < x.length; k++) {
+            sum += x[k] * y[k];
+        }
+        return sum;
+    }
+
+    private static void axpy(double a, double[] x, double[] y) {
+        for (int k = 0; k < x.length; k++) {
+            y[k] += a * x[k];
+        }
+    }
+
+    private static double[] negate(double[] x) {
+        double[] result = new double[x.length];
+        for (int k = 0; k < x.length; k++) {
+            result[k] = -x[k];
+        }
+        return result;
+    }
+}
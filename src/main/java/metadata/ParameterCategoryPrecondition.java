@@ -0,0 +1,102 @@
+/**
+ * Duc Anh Nguyen
+ *
+ * Copyright (C) 2020-2020 by Duc Anh Nguyen and the contributors
+ *
+ * Complete list of developers available at our web site:
+ *
+ *      www.rapidminer.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package metadata;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.operator.ports.metadata.CompatibilityLevel;
+import com.rapidminer.operator.ports.metadata.ExampleSetMetaData;
+import com.rapidminer.operator.ports.metadata.MetaData;
+import com.rapidminer.operator.ports.metadata.Precondition;
+import com.rapidminer.parameter.UndefinedParameterError;
+
+/**
+ * Checks a precondition only if a category parameter of the operator is not set to one of the
+ * given categories, e.g. for ports that are not read with some settings.
+ */
+public class ParameterCategoryPrecondition implements Precondition {
+    private final Operator operator;
+    private final String parameterKey;
+    private final int[] skippedCategories;
+    private final Precondition precondition;
+
+    /**
+     * @param operator - operator of the parameter
+     * @param parameterKey - key of the category parameter
+     * @param precondition - precondition checked for all other categories
+     * @param skippedCategories - categories for which the precondition is not checked
+     */
+    public ParameterCategoryPrecondition(Operator operator, String parameterKey, Precondition precondition, int... skippedCategories) {
+        this.operator = operator;
+        this.parameterKey = parameterKey;
+        this.precondition = precondition;
+        this.skippedCategories = skippedCategories;
+    }
+
+    private boolean isActive() {
+        int category;
+        try {
+            category = operator.getParameterAsInt(parameterKey);
+        } catch (UndefinedParameterError e) {
+            return true;
+        }
+        for (int skipped : skippedCategories) {
+            if (category == skipped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void check(MetaData metaData) {
+        if (isActive()) {
+            precondition.check(metaData);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return precondition.getDescription();
+    }
+
+    @Override
+    public boolean isCompatible(MetaData input, CompatibilityLevel level) {
+        return !isActive() || precondition.isCompatible(input, level);
+    }
+
+    @Override
+    public void assumeSatisfied() {
+        if (isActive()) {
+            precondition.assumeSatisfied();
+        }
+    }
+
+    @Override
+    public MetaData getExpectedMetaData() {
+        if (isActive()) {
+            return precondition.getExpectedMetaData();
+        }
+        return new ExampleSetMetaData();
+    }
+
+}